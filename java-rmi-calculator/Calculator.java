@@ -0,0 +1,194 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Calculator interface defines the remote operations for the RMI calculator service
+ * Calculator接口定义了RMI计算器服务的远程操作
+ * 
+ * This interface extends Remote to enable RMI functionality
+ */
+public interface Calculator extends Remote {
+    
+    /**
+     * Push a value onto the stack
+     * 
+     * @param val the integer value to push onto the stack
+     *            
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    void pushValue(int val) throws RemoteException;
+    
+    /**
+     * Push an operation onto the stack and execute it
+     * 
+     * This method pushes an operator to the stack, which causes the server to:
+     * - Pop all values from the stack
+     * - Perform the specified operation on all values
+     * - Push the result back onto the stack
+     * 
+     * @param operator the operation to perform: "min", "max", "lcm", or "gcd"
+     *             
+     * @throws RemoteException if a network error occurs during the remote call
+     *                       
+     */
+    void pushOperation(String operator) throws RemoteException;
+    
+    /**
+     * Pop and return the top value from the stack
+     * 
+     * 
+     * @return the top value from the stack
+     *        
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    int pop() throws RemoteException;
+    
+    /**
+     * Check if the stack is empty
+     * 
+     * @return true if the stack is empty, false otherwise
+     *    
+     * @throws RemoteException if a network error occurs during the remote call
+     *                      
+     */
+    boolean isEmpty() throws RemoteException;
+    
+    /**
+     * Wait for specified milliseconds then pop the top value from the stack
+     * 
+     * This method introduces a delay before performing the pop operation
+     * 
+     * @param millis the number of milliseconds to wait before popping
+     *              
+     * @return the top value from the stack after the delay
+     *         
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    int delayPop(int millis) throws RemoteException;
+    
+    /**
+     * Return the current version of the stack
+     * 
+     * The version changes every time the stack is modified, so a client can
+     * use it to detect whether other clients touched the stack in between
+     * 
+     * @return the current stack version
+     *         
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    long getVersion() throws RemoteException;
+    
+    /**
+     * Push the result of an operation on the given values as one atomic step,
+     * only if the stack is still at the expected version
+     * 
+     * Only the given values are reduced; values already on the shared stack
+     * are not mixed in and stay where they are. On success the result is
+     * pushed onto the stack; on a conflict the stack is left unchanged
+     * 
+     * @param expectedVersion the stack version returned by getVersion()
+     *                        
+     * @param values the operands, in the order they would have been pushed
+     *              
+     * @param operator the operation to perform: "min", "max", "lcm", or "gcd"
+     *                
+     * @return the result of the operation, now on top of the stack
+     *         
+     * @throws VersionConflictException if the stack changed since expectedVersion
+     *                                 
+     * @throws RemoteException if the operator is invalid or a network error occurs
+     *                        
+     */
+    int executeAtomically(long expectedVersion, int[] values, String operator)
+            throws VersionConflictException, RemoteException;
+    
+    /**
+     * Register for a feed of stack changes (pushes, operations and pops)
+     * 
+     * Events are buffered on the server per subscriber. If the subscriber does
+     * not poll often enough the oldest events are dropped, and the next batch
+     * reports how many were lost
+     * 
+     * @param bufferSize the maximum number of undelivered events to keep
+     *                  
+     * @return the subscriber id to pass to pollEvents and unsubscribe
+     *         
+     * @throws RemoteException if the stack already has the maximum number of
+     *                         subscribers or a network error occurs
+     *                        
+     */
+    int subscribe(int bufferSize) throws RemoteException;
+    
+    /**
+     * Take the next batch of stack change events without changing the stack
+     * 
+     * @param subscriberId the id returned by subscribe
+     *                    
+     * @param maxEvents the maximum number of events to return
+     *                 
+     * @param waitMillis how long to wait when no events are buffered
+     *                  
+     * @return the events in the order they happened, possibly empty
+     *         
+     * @throws RemoteException if the subscriber is unknown or a network error occurs
+     *                        
+     */
+    StackEventBatch pollEvents(int subscriberId, int maxEvents, long waitMillis) throws RemoteException;
+    
+    /**
+     * Stop receiving stack change events
+     * 
+     * @param subscriberId the id returned by subscribe
+     *                    
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    void unsubscribe(int subscriberId) throws RemoteException;
+    
+    /**
+     * Evaluate a whole RPN program in one call
+     * 
+     * The program runs on a private scratch stack, so it neither reads nor
+     * changes the shared stack. See RpnProgram for the syntax.
+     * 
+     * @param rpnProgram the program text, e.g. "12 18 lcm:2 7 9 max:2 gcd"
+     *                  
+     * @return the value on top of the scratch stack when the program ends
+     *         
+     * @throws RemoteException if the program is invalid or a network error occurs
+     *                        
+     */
+    int evaluate(String rpnProgram) throws RemoteException;
+    
+    /**
+     * Evaluate a program that was already parsed on the client
+     * 
+     * @param program the parsed program from RpnProgram.parse
+     *               
+     * @return the value on top of the scratch stack when the program ends
+     *         
+     * @throws RemoteException if the program is invalid or a network error occurs
+     *                        
+     */
+    int evaluate(RpnProgram program) throws RemoteException;
+    
+    /**
+     * Get a calculator for a named stack
+     * 
+     * Named stacks are independent of each other and of the default stack,
+     * and are created the first time they are requested. The empty name
+     * refers to the default stack.
+     * 
+     * @param name the stack name
+     *            
+     * @return a calculator whose operations act on the named stack
+     *         
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    Calculator stack(String name) throws RemoteException;
+}
\ No newline at end of file
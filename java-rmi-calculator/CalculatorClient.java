@@ -59,6 +59,7 @@ public class CalculatorClient {
         } catch (Exception e) {
             System.err.println("Client error: " + e.getMessage());
             e.printStackTrace();
+            System.exit(1);
         }
     }
     
@@ -162,4 +163,165 @@ public class CalculatorClient {
     /**
      * Test mathematical operations (min, max, lcm, gcd)
      */
-    private void testMathematicalOperations() throws RemoteException {
\ No newline at end of file
+    private void testMathematicalOperations() throws RemoteException {
+        System.out.println("\n--- Test 3: Mathematical Operations ---");
+        
+        int[] values = {12, 18, 24};
+        String[] operators = {"min", "max", "gcd", "lcm"};
+        int[] expected = {12, 24, 6, 72};
+        
+        for (int i = 0; i < operators.length; i++) {
+            for (int val : values) {
+                calculator.pushValue(val);
+            }
+            calculator.pushOperation(operators[i]);
+            int result = calculator.pop();
+            
+            System.out.println(operators[i] + "(12, 18, 24) = " + result + " (expected " + expected[i] + ")");
+            assert result == expected[i] : operators[i] + " operation test failed";
+        }
+        System.out.println("✓ Mathematical operations test passed");
+    }
+    
+    /**
+     * Test delayPop waits before popping
+     */
+    private void testDelayPop() throws RemoteException {
+        System.out.println("\n--- Test 4: Delay Pop ---");
+        
+        calculator.pushValue(42);
+        
+        long start = System.currentTimeMillis();
+        int val = calculator.delayPop(1000);
+        long elapsed = System.currentTimeMillis() - start;
+        
+        System.out.println("Delay popped value " + val + " after " + elapsed + "ms");
+        
+        assert val == 42 && elapsed >= 1000 : "Delay pop test failed";
+        System.out.println("✓ Delay pop test passed");
+    }
+    
+    /**
+     * Test that invalid requests are reported as errors
+     */
+    private void testErrorHandling() throws RemoteException {
+        System.out.println("\n--- Test 5: Error Handling ---");
+        
+        // Popping an empty stack must fail
+        while (!calculator.isEmpty()) {
+            calculator.pop();
+        }
+        boolean emptyPopRejected = false;
+        try {
+            calculator.pop();
+        } catch (RemoteException e) {
+            emptyPopRejected = true;
+            System.out.println("Pop on empty stack rejected: " + e.getMessage());
+        }
+        
+        // An unknown operator must fail and leave the stack alone
+        calculator.pushValue(5);
+        boolean invalidOperatorRejected = false;
+        try {
+            calculator.pushOperation("invalid");
+        } catch (RemoteException e) {
+            invalidOperatorRejected = true;
+            System.out.println("Invalid operator rejected: " + e.getMessage());
+        }
+        int val = calculator.pop();
+        
+        assert emptyPopRejected && invalidOperatorRejected && val == 5 : "Error handling test failed";
+        System.out.println("✓ Error handling test passed");
+    }
+    
+    /**
+     * Run the interactive command loop until the user quits
+     */
+    private void runInteractiveMode() {
+        Scanner scanner = new Scanner(System.in);
+        System.out.println("\n[" + clientId + "] Interactive mode. Type 'help' for commands.");
+        
+        while (true) {
+            System.out.print("[" + clientId + "] Enter command: ");
+            if (!scanner.hasNextLine()) {
+                break;
+            }
+            String[] parts = scanner.nextLine().trim().split("\\s+");
+            String command = parts[0].toLowerCase();
+            if (command.isEmpty()) {
+                continue;
+            }
+            if ("quit".equals(command) || "exit".equals(command)) {
+                break;
+            }
+            
+            try {
+                switch (command) {
+                    case "push":
+                        int val = Integer.parseInt(argument(parts));
+                        calculator.pushValue(val);
+                        System.out.println("Pushed " + val);
+                        break;
+                    case "pop":
+                        System.out.println("Popped: " + calculator.pop());
+                        break;
+                    case "operation":
+                        String operator = argument(parts);
+                        calculator.pushOperation(operator);
+                        System.out.println("Applied operation: " + operator);
+                        break;
+                    case "delaypop":
+                        int millis = Integer.parseInt(argument(parts));
+                        System.out.println("Popped after " + millis + "ms: " + calculator.delayPop(millis));
+                        break;
+                    case "empty":
+                        System.out.println("Stack is empty: " + calculator.isEmpty());
+                        break;
+                    case "test":
+                        runAutomatedTests();
+                        break;
+                    case "help":
+                        printHelp();
+                        break;
+                    default:
+                        System.out.println("Unknown command: " + command + ". Type 'help' for commands.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            } catch (RemoteException e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+        }
+        
+        System.out.println("[" + clientId + "] Goodbye!");
+    }
+    
+    /**
+     * @param parts the command and its arguments
+     * @return the first argument of the command
+     * @throws IllegalArgumentException if the command has no argument
+     */
+    private static String argument(String[] parts) {
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Missing argument for command: " + parts[0]);
+        }
+        return parts[1];
+    }
+    
+    /**
+     * Print the interactive commands
+     */
+    private static void printHelp() {
+        System.out.println("Available commands:");
+        System.out.println("  push <number>           - Push a number onto stack");
+        System.out.println("  pop                     - Pop top value from stack");
+        System.out.println("  operation <op>          - Apply operation (min/max/gcd/lcm)");
+        System.out.println("  delaypop <milliseconds> - Pop with delay");
+        System.out.println("  empty                   - Check if stack is empty");
+        System.out.println("  test                    - Run automated tests");
+        System.out.println("  help                    - Show available commands");
+        System.out.println("  quit or exit            - Exit client");
+    }
+}
@@ -1,33 +1,148 @@
+import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.Stack;
-import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * CalculatorImplementation provides the concrete implementation of the Calculator interface
- * 
- * This class extends UnicastRemoteObject to enable RMI functionality
+ *
+ * This class extends UnicastRemoteObject to enable RMI functionality. The instance
+ * bound in the registry holds the default stack; each named stack is another
+ * instance created on demand and sharing the same table of named stacks.
  */
-public class CalculatorImplementation extends UnicastRemoteObject implements Calculator {
+public class CalculatorImplementation extends UnicastRemoteObject implements CalculatorNode {
     
     private static final long serialVersionUID = 1L;
     
-    // Shared stack for all clients
+    // Shared stack for all clients, stored as primitive ints in segments
     
-    private Stack<Integer> stack;
+    private SpillableIntStack stack;
     
+    // Guards the stack. A ReentrantLock is used instead of synchronized so that
+    // callers blocked on it park cleanly, including virtual threads on JDK 21+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Incremented on every change to the stack, used for optimistic concurrency
+    private long version;
+
+    // Subscribers to stack changes; publishing never blocks on a subscriber
+    private final ChangeFeed changeFeed = new ChangeFeed();
+
+    // Parsed RPN programs by source text, so repeat submissions skip parsing.
+    // One cache is shared by all stacks of a server and kept in access order,
+    // so the least recently used program is evicted once it is full
+    private static final int PROGRAM_CACHE_SIZE = 1024;
+    private final Map<String, RpnProgram> programCache;
+    private final ReentrantLock programCacheLock;
+
+    // Cleared when the server starts draining; new calls are then rejected
+    private volatile boolean accepting = true;
+
+    // Set while a router migrates the stack to another node and after it has
+    // moved; calls on the stack are then rejected so the router retries them
+    // on the new owner. Only changed while holding the lock
+    private volatile boolean moved;
+
+    // Values returned by one readStack call at most
+    private static final int MAX_READ_VALUES = 1 << 20;
+
+    // Empty named stacks unused for this long are removed (milliseconds)
+    private static final long NAMED_STACK_IDLE = 10 * 60 * 1000;
+
+    // How often creating a named stack looks for idle ones (milliseconds)
+    private static final long EVICTION_CHECK_INTERVAL = 1000;
+
+    // Heap taken by one empty named stack, including its remote object export.
+    // Measured at about 1.2 KB on JDK 17, rounded up
+    private static final long NAMED_STACK_BYTES = 2048;
+
+    // Named stacks a server holds at most: as many empty ones as fit in a
+    // quarter of the heap, and never more than 100000
+    private static final int MAX_NAMED_STACKS =
+            (int) Math.min(100000, Runtime.getRuntime().maxMemory() / 4 / NAMED_STACK_BYTES);
+
+    // When this stack was last called (System.currentTimeMillis)
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    // Next time creating a named stack sweeps for idle ones, guarded by namedStacksLock
+    private long nextEvictionCheck;
+
+    // The calculator holding the default stack, and the named stacks it created
+    private final String name;
+    private final CalculatorImplementation root;
+    private final Map<String, CalculatorImplementation> namedStacks;
+    private final ReentrantLock namedStacksLock;
+
+    // Creates the storage for each new stack
+    private final Supplier<SpillableIntStack> stackFactory;
+
     /**
      * Constructor initializes the calculator implementation
-     * 
+     *
      * @throws RemoteException if the remote object cannot be created
-     *                        
+     *
      */
     public CalculatorImplementation() throws RemoteException {
+        this(SpillableIntStack::new);
+    }
+
+    /**
+     * Constructor initializes the calculator implementation with the given stack storage
+     *
+     * Passing () -> SpillableIntStack.withHeapLimit(n) keeps heap usage flat for very
+     * deep stacks by moving older values to a temporary spill file
+     *
+     * @param stackFactory creates the storage for the default stack and each named stack
+     * @throws RemoteException if the remote object cannot be created
+     */
+    public CalculatorImplementation(Supplier<SpillableIntStack> stackFactory) throws RemoteException {
         super();
-        this.stack = new Stack<>();
+        this.stack = stackFactory.get();
+        this.stackFactory = stackFactory;
+        this.name = "";
+        this.root = this;
+        this.namedStacks = new ConcurrentHashMap<>();
+        this.namedStacksLock = new ReentrantLock();
+        this.programCache = new LinkedHashMap<String, RpnProgram>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RpnProgram> eldest) {
+                return size() > PROGRAM_CACHE_SIZE;
+            }
+        };
+        this.programCacheLock = new ReentrantLock();
         System.out.println("Calculator implementation initialized.");
     }
+
+    /**
+     * Constructor creates a named stack belonging to the given root calculator
+     *
+     * @param root the calculator holding the default stack
+     * @param name the name of the new stack
+     * @throws RemoteException if the remote object cannot be created
+     */
+    private CalculatorImplementation(CalculatorImplementation root, String name) throws RemoteException {
+        super();
+        this.stack = root.stackFactory.get();
+        this.stackFactory = root.stackFactory;
+        this.name = name;
+        this.root = root;
+        this.namedStacks = root.namedStacks;
+        this.namedStacksLock = root.namedStacksLock;
+        this.programCache = root.programCache;
+        this.programCacheLock = root.programCacheLock;
+        this.accepting = root.accepting;
+    }
     
     /**
      * Push a value onto the stack (thread-safe implementation)
@@ -37,9 +152,18 @@ public class CalculatorImplementation extends UnicastRemoteObject implements Cal
      * @throws RemoteException if a network error occurs during the remote call
      */
     @Override
-    public synchronized void pushValue(int val) throws RemoteException {
-        stack.push(val);
-        System.out.println("Pushed value: " + val + " | Stack size: " + stack.size());
+    public void pushValue(int val) throws RemoteException {
+        checkAccepting();
+        lock.lock();
+        try {
+            checkNotMoved();
+            stack.push(val);
+            version++;
+            changeFeed.publish(new StackEvent(StackEvent.Type.PUSH, val, null, version));
+            System.out.println("Pushed value: " + val + " | Stack size: " + stack.size());
+        } finally {
+            lock.unlock();
+        }
     }
     
     /**
@@ -51,43 +175,22 @@ public class CalculatorImplementation extends UnicastRemoteObject implements Cal
      *                    
      */
     @Override
-    public synchronized void pushOperation(String operator) throws RemoteException {
-        if (stack.isEmpty()) {
-            System.out.println("Warning: Operation " + operator + " called on empty stack. " 
-            return;
+    public void pushOperation(String operator) throws RemoteException {
+        checkAccepting();
+        lock.lock();
+        try {
+            checkNotMoved();
+            if (stack.isEmpty()) {
+                System.out.println("Warning: Operation " + operator + " called on empty stack.");
+                return;
+            }
+
+            applyOperation(operator);
+        } finally {
+            lock.unlock();
         }
-        
-        // Pop all values from the stack
-    
-        List<Integer> values = new ArrayList<>();
-        while (!stack.isEmpty()) {
-            values.add(stack.pop());
-        }
-        
-        int result;
-        switch (operator.toLowerCase()) {
-            case "min":
-                result = findMin(values);
-                break;
-            case "max":
-                result = findMax(values);
-                break;
-            case "lcm":
-                result = findLCM(values);
-                break;
-            case "gcd":
-                result = findGCD(values);
-                break;
-            default:
-                throw new RemoteException("Invalid operator: " + operator + 
-                                        " 无效操作符: " + operator);
-        }
-        
-        // Push the result back onto the stack
-        stack.push(result);
-        System.out.println("Operation " + operator + " executed. Result: " + result);
     }
-    
+
     /**
      * Pop and return the top value from the stack
      * 
@@ -95,14 +198,23 @@ public class CalculatorImplementation extends UnicastRemoteObject implements Cal
      * @throws RemoteException if the stack is empty or a network error occurs
      */
     @Override
-    public synchronized int pop() throws RemoteException {
-        if (stack.isEmpty()) {
-            throw new RemoteException("Stack is empty, cannot pop. 堆栈为空，无法弹出。");
+    public int pop() throws RemoteException {
+        checkAccepting();
+        lock.lock();
+        try {
+            checkNotMoved();
+            if (stack.isEmpty()) {
+                throw new RemoteException("Stack is empty, cannot pop. 堆栈为空，无法弹出。");
+            }
+            int value = stack.pop();
+            version++;
+            changeFeed.publish(new StackEvent(StackEvent.Type.POP, value, null, version));
+            System.out.println("Popped value: " + value + " | Remaining stack size: " + stack.size() +
+                              " 弹出值: " + value + " | 剩余堆栈大小: " + stack.size());
+            return value;
+        } finally {
+            lock.unlock();
         }
-        int value = stack.pop();
-        System.out.println("Popped value: " + value + " | Remaining stack size: " + stack.size() +
-                          " 弹出值: " + value + " | 剩余堆栈大小: " + stack.size());
-        return value;
     }
     
     /**
@@ -114,118 +226,709 @@ public class CalculatorImplementation extends UnicastRemoteObject implements Cal
      *                       
      */
     @Override
-    public synchronized boolean isEmpty() throws RemoteException {
-        boolean empty = stack.isEmpty();
-        System.out.println("Stack empty check: " + empty + " 堆栈空检查: " + empty);
-        return empty;
+    public boolean isEmpty() throws RemoteException {
+        checkAccepting();
+        lock.lock();
+        try {
+            checkNotMoved();
+            boolean empty = stack.isEmpty();
+            System.out.println("Stack empty check: " + empty + " 堆栈空检查: " + empty);
+            return empty;
+        } finally {
+            lock.unlock();
+        }
     }
     
     /**
      * Wait for specified milliseconds then pop the top value from the stack
+     *
+     * The wait happens without holding the stack lock, so a long delay only
+     * occupies the caller's own thread instead of stalling every other client
+     *
      * @param millis the number of milliseconds to wait before popping
      * @return the top value from the stack after the delay
-     * @throws RemoteExcept
+     * @throws RemoteException if the stack is empty or the wait is interrupted
      */
     @Override
-    public synchronized int delayPop(int millis) throws RemoteException {
+    public int delayPop(int millis) throws RemoteException {
+        checkAccepting();
         System.out.println("DelayPop called with delay: " + millis + "ms. ");
-        
-        if (stack.isEmpty()) {
-            throw new RemoteException("Stack is empty, cannot delay pop.");
+
+        lock.lock();
+        try {
+            checkNotMoved();
+            if (stack.isEmpty()) {
+                throw new RemoteException("Stack is empty, cannot delay pop.");
+            }
+        } finally {
+            lock.unlock();
         }
-        
+
         try {
             Thread.sleep(millis);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RemoteException("DelayPop interrupted.", e);
         }
-        
-        int value = stack.pop();
-        System.out.println("DelayPop completed. Popped value: " + value);
-        return value;
+
+        lock.lock();
+        try {
+            // Another client may have emptied or moved the stack while we were waiting
+            checkNotMoved();
+            if (stack.isEmpty()) {
+                throw new RemoteException("Stack is empty, cannot delay pop.");
+            }
+            int value = stack.pop();
+            version++;
+            changeFeed.publish(new StackEvent(StackEvent.Type.POP, value, null, version));
+            System.out.println("DelayPop completed. Popped value: " + value);
+            return value;
+        } finally {
+            lock.unlock();
+        }
     }
-    
+
     /**
-     * Find the minimum value in the list
-     * 
-     * @param values list of integers to find minimum from
-     * @return the minimum value
+     * Return the current version of the stack
+     *
+     * @return the stack version
+     * @throws RemoteException if a network error occurs during the remote call
      */
-    private int findMin(List<Integer> values) {
-        return values.stream().mapToInt(Integer::intValue).min().orElse(0);
+    @Override
+    public long getVersion() throws RemoteException {
+        checkAccepting();
+        lock.lock();
+        try {
+            checkNotMoved();
+            return version;
+        } finally {
+            lock.unlock();
+        }
     }
-    
+
     /**
-     * Find the maximum value in the list
-     * 
-     * @param values list of integers to find maximum from
-     * @return the maximum value
+     * Push the result of an operation on the caller's values, only if the
+     * stack is still at the expected version
+     *
+     * The check and the push happen under the stack lock, so no other client
+     * can change the stack in between. The values are reduced on their own,
+     * so operands other clients pushed onto the shared stack are never mixed
+     * in; the stack gains exactly one value, the result, the same as pushing
+     * the operands and applying the operation to just them. When the version
+     * does not match, the stack is left untouched.
+     *
+     * @param expectedVersion the stack version the caller last observed
+     * @param values the operands, in the order they would have been pushed
+     * @param operator the operation to perform: "min", "max", "lcm", or "gcd"
+     * @return the result of the operation, which is now on top of the stack
+     * @throws VersionConflictException if the stack changed since expectedVersion
+     * @throws RemoteException if the operator is invalid or no values are given
      */
-    private int findMax(List<Integer> values) {
-        return values.stream().mapToInt(Integer::intValue).max().orElse(0);
+    @Override
+    public int executeAtomically(long expectedVersion, int[] values, String operator)
+            throws VersionConflictException, RemoteException {
+        checkAccepting();
+        checkOperator(operator);
+        if (values == null || values.length == 0) {
+            throw new RemoteException("No values given, nothing to operate on.");
+        }
+
+        // Reduce top-down, the same order pushOperation would see these values in
+        final int top = values.length - 1;
+        int result = Operation.fromName(operator).apply(
+                IntStream.rangeClosed(0, top).map(k -> values[top - k]));
+
+        lock.lock();
+        try {
+            checkNotMoved();
+            if (version != expectedVersion) {
+                throw new VersionConflictException(expectedVersion, version);
+            }
+            stack.push(result);
+            version++;
+            changeFeed.publish(new StackEvent(StackEvent.Type.PUSH, result, null, version));
+            System.out.println("Atomic " + operator + " executed at version " + expectedVersion
+                    + ". Result: " + result + " | Stack size: " + stack.size());
+            return result;
+        } finally {
+            lock.unlock();
+        }
     }
-    
+
     /**
-     * Find the least common multiple of all values in the list
-     * 查找列表中所有值的最小公倍数
-     * 
-     * @param values list of integers to find LCM from
-     *              要查找最小公倍数的整数列表
-     * @return the least common multiple
-     *         最小公倍数
+     * Register for stack change events
+     *
+     * @param bufferSize the maximum number of undelivered events to keep
+     * @return the subscriber id
+     * @throws RemoteException if a network error occurs during the remote call
+     */
+    @Override
+    public int subscribe(int bufferSize) throws RemoteException {
+        checkAccepting();
+        checkNotMoved();
+        return changeFeed.subscribe(bufferSize);
+    }
+
+    /**
+     * Take the next batch of stack change events
+     *
+     * Waits on the subscriber's own buffer, never on the stack lock
+     *
+     * @param subscriberId the id returned by subscribe
+     * @param maxEvents the maximum number of events to return
+     * @param waitMillis how long to wait when no events are buffered
+     * @return the batch of events, possibly empty
+     * @throws RemoteException if the subscriber is unknown or a network error occurs
      */
-    private int findLCM(List<Integer> values) {
-        if (values.isEmpty()) return 0;
-        
-        int lcm = Math.abs(values.get(0));
-        for (int i = 1; i < values.size(); i++) {
-            lcm = lcm(lcm, Math.abs(values.get(i)));
+    @Override
+    public StackEventBatch pollEvents(int subscriberId, int maxEvents, long waitMillis)
+            throws RemoteException {
+        checkAccepting();
+        checkNotMoved();
+        return changeFeed.poll(subscriberId, maxEvents, waitMillis);
+    }
+
+    /**
+     * Stop receiving stack change events
+     *
+     * @param subscriberId the id returned by subscribe
+     * @throws RemoteException if a network error occurs during the remote call
+     */
+    @Override
+    public void unsubscribe(int subscriberId) throws RemoteException {
+        changeFeed.unsubscribe(subscriberId);
+    }
+
+    /**
+     * Evaluate an RPN program on a private scratch stack
+     *
+     * Parsed programs are cached by their text in a cache shared by every
+     * stack of the server. Neither parsing nor evaluation takes the stack lock.
+     *
+     * @param rpnProgram the program text
+     * @return the result of the program
+     * @throws RemoteException if the program is invalid or cannot be evaluated
+     */
+    @Override
+    public int evaluate(String rpnProgram) throws RemoteException {
+        checkAccepting();
+        try {
+            RpnProgram program = cachedProgram(rpnProgram == null ? "" : rpnProgram);
+            return runProgram(program);
+        } catch (IllegalArgumentException e) {
+            throw new RemoteException("Invalid RPN program: " + e.getMessage());
         }
-        return lcm;
     }
-    
+
     /**
-     * Find the greatest common divisor of all values in the list
-     * 
-     * @param values list of integers to find GCD from
-     *             
-     * @return the greatest common divisor
+     * Evaluate a program that was parsed on the client
+     *
+     * @param program the parsed program
+     * @return the result of the program
+     * @throws RemoteException if the program is invalid or cannot be evaluated
+     */
+    @Override
+    public int evaluate(RpnProgram program) throws RemoteException {
+        checkAccepting();
+        if (program == null) {
+            throw new RemoteException("Invalid RPN program: null");
+        }
+        try {
+            return runProgram(program);
+        } catch (IllegalArgumentException e) {
+            throw new RemoteException("Invalid RPN program: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Look up a program in the shared cache, parsing and caching it on a miss
+     *
+     * Parsing happens outside the cache lock, so a slow parse does not hold
+     * up other clients; two clients parsing the same text both cache it.
+     *
+     * @param source the program text
+     * @return the parsed program
+     * @throws IllegalArgumentException if the program is invalid
      */
-    private int findGCD(List<Integer> values) {
-        if (values.isEmpty()) return 0;
-        
-        int gcd = Math.abs(values.get(0));
-        for (int i = 1; i < values.size(); i++) {
-            gcd = gcd(gcd, Math.abs(values.get(i)));
+    private RpnProgram cachedProgram(String source) {
+        programCacheLock.lock();
+        try {
+            RpnProgram program = programCache.get(source);
+            if (program != null) {
+                return program;
+            }
+        } finally {
+            programCacheLock.unlock();
+        }
+
+        RpnProgram program = RpnProgram.parse(source);
+        programCacheLock.lock();
+        try {
+            programCache.put(source, program);
+        } finally {
+            programCacheLock.unlock();
         }
-        return gcd;
+        return program;
     }
-    
+
     /**
-     * Calculate LCM of two numbers
-     * 
-     * @param a first number 
-     * @param b second number 
-     * @return LCM of a and b
+     * Run a parsed program and report arithmetic failures as remote errors
+     *
+     * @param program the parsed program
+     * @return the result of the program
+     * @throws RemoteException if the program divides by zero
      */
-    private int lcm(int a, int b) {
-        return (a * b) / gcd(a, b);
+    private int runProgram(RpnProgram program) throws RemoteException {
+        try {
+            int result = program.evaluate();
+            System.out.println("Evaluated RPN program of " + program.size() + " instructions. Result: " + result);
+            return result;
+        } catch (ArithmeticException e) {
+            throw new RemoteException("RPN program failed: " + e.getMessage());
+        }
     }
-    
+
     /**
-     * Calculate GCD of two numbers using Euclidean algorithm
-     * 
-     * @param a first number 
-     * @param b second number 
-     * @return GCD of a and b
+     * Get a calculator for a named stack, creating the stack if needed
+     *
+     * @param name the stack name, or the empty string for the default stack
+     * @return the calculator for the named stack
+     * @throws RemoteException if the named stack cannot be exported
+     */
+    @Override
+    public Calculator stack(String name) throws RemoteException {
+        checkAccepting();
+        CalculatorImplementation target = namedStack(name);
+        target.lastUsed = System.currentTimeMillis();
+        return target;
+    }
+
+    /**
+     * List the stacks this node serves
+     *
+     * @return the names of all named stacks, and "" unless the default stack has moved away
+     * @throws RemoteException if a network error occurs during the remote call
+     */
+    @Override
+    public String[] stackNames() throws RemoteException {
+        checkAccepting();
+        List<String> names = new ArrayList<>();
+        if (!root.moved) {
+            names.add("");
+        }
+        names.addAll(namedStacks.keySet());
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * Stop serving a stack so a router can copy it to another node
+     *
+     * Takes the stack lock, so calls already inside the stack finish first.
+     * Later calls fail with StackMovedException.
+     *
+     * @param name the stack name, or the empty string for the default stack
+     * @return the size and version of the stack, both 0 if there is no such stack
+     * @throws RemoteException if a network error occurs during the remote call
+     */
+    @Override
+    public FrozenStack freezeStack(String name) throws RemoteException {
+        checkAccepting();
+        CalculatorImplementation target = existingStack(name);
+        if (target == null) {
+            return new FrozenStack(0, 0);
+        }
+        target.lock.lock();
+        try {
+            target.moved = true;
+            System.out.println("Froze stack '" + name + "' with " + target.stack.size()
+                    + " values at version " + target.version + " for migration.");
+            return new FrozenStack(target.stack.size(), target.version);
+        } finally {
+            target.lock.unlock();
+        }
+    }
+
+    /**
+     * Read part of a stack, bottom first, used to migrate stacks
+     *
+     * The values are streamed from the stack segments, so only the returned
+     * chunk is ever copied
+     *
+     * @param name the stack name, or the empty string for the default stack
+     * @param from the number of values to skip at the bottom of the stack
+     * @param maxValues the maximum number of values to return
+     * @return the values, empty once from reaches the top of the stack
+     * @throws RemoteException if a network error occurs during the remote call
+     */
+    @Override
+    public int[] readStack(String name, long from, int maxValues) throws RemoteException {
+        checkAccepting();
+        CalculatorImplementation target = existingStack(name);
+        if (target == null) {
+            return new int[0];
+        }
+        int limit = Math.max(0, Math.min(maxValues, MAX_READ_VALUES));
+        target.lock.lock();
+        try {
+            return target.stack.bottomUp(from).limit(limit).toArray();
+        } finally {
+            target.lock.unlock();
+        }
+    }
+
+    /**
+     * Push values onto a stack and serve it from this node, used to migrate stacks
+     *
+     * The stack continues from the version it had on its old node instead of
+     * counting the chunks it received, so a version a client read before the
+     * move cannot match again once the stack has changed. It never goes
+     * backwards on this node either.
+     *
+     * @param name the stack name, or the empty string for the default stack
+     * @param values the values to push, bottom first
+     * @param version the version the stack had when it was frozen on its old node
+     * @throws RemoteException if a network error occurs during the remote call
+     */
+    @Override
+    public void putStack(String name, int[] values, long version) throws RemoteException {
+        checkAccepting();
+        CalculatorImplementation target = namedStack(name);
+        target.lock.lock();
+        try {
+            for (int val : values) {
+                target.stack.push(val);
+            }
+            target.moved = false;
+            target.version = Math.max(target.version, version);
+            System.out.println("Received " + values.length + " values for stack '" + name + "'.");
+        } finally {
+            target.lock.unlock();
+        }
+    }
+
+    /**
+     * Discard a stack that now lives on another node, or a partial copy of one
+     *
+     * A named stack is removed and unexported. The default stack cannot be
+     * unexported, so it is emptied and keeps rejecting calls until a router
+     * moves the default stack back with putStack.
+     *
+     * @param name the stack name, or the empty string for the default stack
+     * @throws RemoteException if a network error occurs during the remote call
+     */
+    @Override
+    public void dropStack(String name) throws RemoteException {
+        checkAccepting();
+        CalculatorImplementation target = existingStack(name);
+        if (target == null) {
+            return;
+        }
+        target.lock.lock();
+        try {
+            target.moved = true;
+            target.stack.clear();
+            target.version++;
+            if (target != root) {
+                namedStacks.remove(name, target);
+                target.stack.close();
+            }
+        } finally {
+            target.lock.unlock();
+        }
+        if (target != root) {
+            // Calls still waiting for the lock fail with StackMovedException
+            try {
+                UnicastRemoteObject.unexportObject(target, true);
+            } catch (NoSuchObjectException e) {
+                // Already unexported
+            }
+        }
+        System.out.println("Dropped stack '" + name + "'.");
+    }
+
+    /**
+     * Serve a frozen stack again after a migration was abandoned
+     *
+     * @param name the stack name, or the empty string for the default stack
+     * @throws RemoteException if a network error occurs during the remote call
+     */
+    @Override
+    public void thawStack(String name) throws RemoteException {
+        checkAccepting();
+        CalculatorImplementation target = existingStack(name);
+        if (target == null) {
+            return;
+        }
+        target.lock.lock();
+        try {
+            target.moved = false;
+            System.out.println("Thawed stack '" + name + "'.");
+        } finally {
+            target.lock.unlock();
+        }
+    }
+
+    /**
+     * Look up a stack without creating it
+     *
+     * @param name the stack name, or the empty string or null for the default stack
+     * @return the calculator for the stack, or null if there is no such named stack
+     */
+    private CalculatorImplementation existingStack(String name) {
+        if (name == null || name.isEmpty()) {
+            return root;
+        }
+        return namedStacks.get(name);
+    }
+
+    /**
+     * Look up a named stack, creating and exporting it the first time
+     *
+     * Creating a stack also removes empty named stacks that have not been
+     * used for NAMED_STACK_IDLE, checking at most once per EVICTION_CHECK_INTERVAL
+     *
+     * @param name the stack name, or the empty string or null for the default stack
+     * @return the calculator for the named stack
+     * @throws RemoteException if the named stack cannot be exported or there are too many
+     */
+    private CalculatorImplementation namedStack(String name) throws RemoteException {
+        if (name == null || name.isEmpty()) {
+            return root;
+        }
+        CalculatorImplementation named = namedStacks.get(name);
+        if (named != null) {
+            return named;
+        }
+        namedStacksLock.lock();
+        try {
+            named = namedStacks.get(name);
+            if (named == null) {
+                long now = System.currentTimeMillis();
+                if (now >= root.nextEvictionCheck || namedStacks.size() >= MAX_NAMED_STACKS) {
+                    root.nextEvictionCheck = now + EVICTION_CHECK_INTERVAL;
+                    evictIdleStacks(now);
+                }
+                if (namedStacks.size() >= MAX_NAMED_STACKS) {
+                    throw new RemoteException("Too many named stacks (" + MAX_NAMED_STACKS + "), cannot create " + name);
+                }
+                named = new CalculatorImplementation(root, name);
+                namedStacks.put(name, named);
+                System.out.println("Created named stack: " + name);
+            }
+            return named;
+        } finally {
+            namedStacksLock.unlock();
+        }
+    }
+
+    /**
+     * Remove and unexport empty named stacks that have been idle too long
+     *
+     * Clients still holding one get StackMovedException and can ask for the
+     * stack again; calls through a router do this automatically. Stacks
+     * frozen for migration are left to the router. Must be called while
+     * holding namedStacksLock.
+     *
+     * @param now the current time (System.currentTimeMillis)
+     */
+    private void evictIdleStacks(long now) {
+        int evicted = 0;
+        for (CalculatorImplementation named : namedStacks.values()) {
+            if (now - named.lastUsed <= NAMED_STACK_IDLE) {
+                continue;
+            }
+            named.lock.lock();
+            try {
+                if (named.moved || !named.stack.isEmpty() || now - named.lastUsed <= NAMED_STACK_IDLE) {
+                    continue;
+                }
+                named.moved = true;
+                named.stack.close();
+                namedStacks.remove(named.name, named);
+            } finally {
+                named.lock.unlock();
+            }
+            try {
+                UnicastRemoteObject.unexportObject(named, true);
+            } catch (NoSuchObjectException e) {
+                // Already unexported
+            }
+            evicted++;
+        }
+        if (evicted > 0) {
+            System.out.println("Evicted " + evicted + " idle named stacks, " + namedStacks.size() + " remain.");
+        }
+    }
+
+    /**
+     * Stop accepting new calls so the server can drain
+     *
+     * Calls already in progress are allowed to finish. Waiting change feed
+     * polls are woken up so they return straight away.
+     */
+    public void stopAccepting() {
+        namedStacksLock.lock();
+        try {
+            for (CalculatorImplementation named : namedStacks.values()) {
+                named.accepting = false;
+                named.changeFeed.close();
+            }
+            root.accepting = false;
+            root.changeFeed.close();
+        } finally {
+            namedStacksLock.unlock();
+        }
+        System.out.println("Calculator stopped accepting new calls.");
+    }
+
+    /**
+     * @return true while the calculator accepts new calls
+     */
+    public boolean isAccepting() {
+        return accepting;
+    }
+
+    /**
+     * Pass every value on the stack to the action, bottom first
+     *
+     * The values are streamed from the stack segments, including any spilled
+     * to disk, so even a very deep stack is never copied onto the heap
+     *
+     * @param action called once per value while the stack lock is held
+     * @return the number of values visited
+     */
+    public long forEachValue(IntConsumer action) {
+        lock.lock();
+        try {
+            stack.bottomUp(0).forEach(action);
+            return stack.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Push values saved by a previous server run onto the stack, bottom first
+     *
+     * The server restores a stack in bounded chunks as it reads the state
+     * file, so the saved values are never all held at once
+     *
+     * @param values the values to push
+     * @param count the number of values to push from the start of the array
+     */
+    public void restore(int[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                stack.push(values[i]);
+            }
+            version++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Look up a stack to restore saved values into, creating it if needed
+     *
+     * @param name the stack name, or the empty string for the default stack
+     * @return the calculator for the stack
+     * @throws RemoteException if the named stack cannot be exported
+     */
+    public CalculatorImplementation restoredStack(String name) throws RemoteException {
+        return namedStack(name);
+    }
+
+    /**
+     * @return the default stack followed by every named stack, ordered by name
+     */
+    public List<CalculatorImplementation> allStacks() {
+        List<CalculatorImplementation> stacks = new ArrayList<>();
+        stacks.add(root);
+        stacks.addAll(new TreeMap<>(namedStacks).values());
+        return stacks;
+    }
+
+    /**
+     * @return the name of this stack, the empty string for the default stack
+     */
+    public String stackName() {
+        return name;
+    }
+
+    /**
+     * @return true if this calculator's stack holds no values
+     */
+    public boolean isStackEmpty() {
+        lock.lock();
+        try {
+            return stack.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reject the call if the server is draining, otherwise record that the stack was used
+     *
+     * @throws RemoteException if the calculator no longer accepts calls
+     */
+    private void checkAccepting() throws RemoteException {
+        if (!accepting) {
+            throw new RemoteException("Server is shutting down. 服务器正在关闭。");
+        }
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Reject the call if the stack has moved to another node
+     *
+     * @throws StackMovedException if the stack is frozen or has moved
+     */
+    private void checkNotMoved() throws StackMovedException {
+        if (moved) {
+            throw new StackMovedException(name);
+        }
+    }
+
+    /**
+     * Pop all values, apply the operation and push the result
+     *
+     * The reduction streams over the stack from the top down, reading any
+     * spilled segments sequentially, and then clears the stack in one step
+     * instead of popping values one at a time
+     *
+     * Must be called while holding the lock on a non-empty stack
+     *
+     * @param operator the operation to perform: "min", "max", "lcm", or "gcd"
+     * @throws RemoteException if the operator is invalid
+     */
+    private void applyOperation(String operator) throws RemoteException {
+        checkOperator(operator);
+
+        int result = Operation.fromName(operator).apply(stack.topDown());
+
+        // Replace all values with the result
+        stack.clear();
+        stack.push(result);
+        version++;
+        changeFeed.publish(new StackEvent(StackEvent.Type.OPERATION, result, operator.toLowerCase(), version));
+        System.out.println("Operation " + operator + " executed. Result: " + result);
+    }
+
+    /**
+     * Check that the operator is one of the supported operations
+     *
+     * @param operator the operator to check
+     * @throws RemoteException if the operator is invalid
      */
-    private int gcd(int a, int b) {
-        while (b != 0) {
-            int temp = b;
-            b = a % b;
-            a = temp;
+    private void checkOperator(String operator) throws RemoteException {
+        if (Operation.fromName(operator) == null) {
+            throw new RemoteException("Invalid operator: " + operator +
+                                    " 无效操作符: " + operator);
         }
-        return a;
     }
 }
\ No newline at end of file
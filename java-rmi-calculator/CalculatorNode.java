@@ -0,0 +1,91 @@
+import java.rmi.RemoteException;
+
+/**
+ * CalculatorNode is the interface a calculator server exposes to a cluster router
+ * 
+ * On top of the normal Calculator operations it lets the router list the
+ * stacks a node holds and copy them between nodes when nodes join or leave.
+ * A stack is frozen, copied in chunks and only dropped from its old node once
+ * the new owner has all of it, so a failed migration can be undone. Stack
+ * names follow Calculator.stack: the empty name is the default stack.
+ */
+public interface CalculatorNode extends Calculator {
+    
+    /**
+     * List the stacks this node serves
+     * 
+     * @return the names of all stacks, including empty ones
+     *         
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    String[] stackNames() throws RemoteException;
+    
+    /**
+     * Stop serving a stack so it can be copied to another node
+     * 
+     * Calls already holding the stack finish first; later calls on the stack
+     * fail with StackMovedException until it is thawed or reopened by putStack
+     * 
+     * @param name the stack name
+     *            
+     * @return the size and version of the frozen stack
+     *         
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    FrozenStack freezeStack(String name) throws RemoteException;
+    
+    /**
+     * Read part of a stack without removing it, bottom first
+     * 
+     * @param name the stack name
+     *            
+     * @param from the number of values to skip at the bottom of the stack
+     *            
+     * @param maxValues the maximum number of values to return
+     *                 
+     * @return the values, empty once from reaches the top of the stack
+     *         
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    int[] readStack(String name, long from, int maxValues) throws RemoteException;
+    
+    /**
+     * Push values onto a stack, bottom first, and serve the stack from this node
+     * 
+     * The stack takes over the version it had on its old node, so versions
+     * keep increasing across the move
+     * 
+     * @param name the stack name
+     *            
+     * @param values the values to push, as returned by readStack
+     *              
+     * @param version the version returned by freezeStack on the old node
+     *               
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    void putStack(String name, int[] values, long version) throws RemoteException;
+    
+    /**
+     * Discard a stack that now lives elsewhere, or a partial copy of one
+     * 
+     * @param name the stack name
+     *            
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    void dropStack(String name) throws RemoteException;
+    
+    /**
+     * Serve a frozen stack again after a migration was abandoned
+     * 
+     * @param name the stack name
+     *            
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    void thawStack(String name) throws RemoteException;
+}
@@ -0,0 +1,705 @@
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * CalculatorRouter spreads named stacks over several calculator servers
+ *
+ * The router binds itself in the registry as a normal Calculator, so clients
+ * use it exactly like a single server. Each stack name is assigned to a node
+ * by consistent hashing; the default stack is the stack with the empty name.
+ * When a node joins or leaves, only the stacks whose owner changes are moved.
+ * Each of them is frozen on its old node, copied in chunks and dropped from
+ * the old node only after every stack has been copied; the new ring is then
+ * put in use. If any copy fails, the copies are discarded, the stacks are
+ * thawed and membership stays as it was. Calls for a stack being moved wait
+ * until the migration ends; calls for other stacks are not held up, and a
+ * call that reaches a stack after it moved is retried on its new owner.
+ *
+ * A migrated stack keeps its version on the new node. Change feed
+ * subscriptions belong to the node that owns the stack, so they restart
+ * when that stack is migrated.
+ */
+public class CalculatorRouter extends UnicastRemoteObject implements Calculator, CalculatorRouterAdmin {
+
+    private static final long serialVersionUID = 1L;
+
+    // Default registry port and service name, the same as a single server
+    private static final int REGISTRY_PORT = 1099;
+    private static final String SERVICE_NAME = "CalculatorService";
+
+    // Name of the default stack
+    private static final String DEFAULT_STACK = "";
+
+    // Values copied per remote call when migrating a stack
+    private static final int MIGRATION_CHUNK = 65536;
+
+    // Longest a call waits for its stack to finish migrating (milliseconds)
+    private static final long MIGRATION_WAIT = 60000;
+
+    // Guards ring, nodes and pendingRing. Calls hold the read lock only to find
+    // their target, never while the call itself runs
+    private final ReentrantReadWriteLock membership = new ReentrantReadWriteLock();
+    private ConsistentHashRing ring = new ConsistentHashRing(ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    private final Map<String, CalculatorNode> nodes = new HashMap<>();
+
+    // The ring being migrated to, or null. Stacks whose owner differs between
+    // ring and pendingRing are being moved
+    private ConsistentHashRing pendingRing;
+
+    // Only one membership change runs at a time, so it can read ring and
+    // nodes without the read lock
+    private final ReentrantLock membershipChange = new ReentrantLock();
+
+    // Counts finished migrations; calls waiting for a moving stack wait on it
+    private final Object migrationMonitor = new Object();
+    private long migrationsFinished;
+
+    // Backend calculator for each stack name, cleared whenever membership changes
+    private static final int STACK_TARGET_CACHE_SIZE = 10000;
+    private final Map<String, Calculator> stackTargets = new ConcurrentHashMap<>();
+
+    /**
+     * RemoteCall is one operation forwarded to the calculator that owns a stack
+     *
+     * @param <T> the result type
+     * @param <E> an additional checked exception the operation may throw
+     */
+    interface RemoteCall<T, E extends Exception> {
+        T call(Calculator target) throws E, RemoteException;
+    }
+
+    /**
+     * Constructor creates a router with no nodes
+     *
+     * @throws RemoteException if the remote object cannot be created
+     */
+    public CalculatorRouter() throws RemoteException {
+        super();
+        System.out.println("Calculator router initialized.");
+    }
+
+    /**
+     * Main method to start the router, or to send it an admin command
+     *
+     * @param args command line arguments:
+     *            [--port <port>] [--name <service>] --node <url> [--node <url> ...]
+     *            or: admin <adminUrl> add|remove|list [nodeUrl]
+     */
+    public static void main(String[] args) {
+        try {
+            if (args.length > 0 && "admin".equals(args[0])) {
+                runAdminCommand(args);
+                return;
+            }
+
+            int port = REGISTRY_PORT;
+            String serviceName = SERVICE_NAME;
+            List<String> nodeUrls = new ArrayList<>();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--name":
+                        serviceName = args[++i];
+                        break;
+                    case "--node":
+                        nodeUrls.add(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+
+            System.out.println("Starting Calculator Router...");
+            CalculatorRouter router = new CalculatorRouter();
+            for (String nodeUrl : nodeUrls) {
+                router.addNode(nodeUrl);
+            }
+
+            Registry registry = startRegistry(port);
+            registry.rebind(serviceName, router);
+            registry.rebind(serviceName + "Admin", router);
+            System.out.println("Router bound as: " + serviceName + " (admin: " + serviceName + "Admin)");
+            System.out.println("Registry running on port: " + port);
+
+            final String name = serviceName;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    registry.unbind(name);
+                    registry.unbind(name + "Admin");
+                } catch (Exception e) {
+                    System.err.println("Failed to unbind router: " + e.getMessage());
+                }
+            }, "router-shutdown"));
+
+            // Run until the process is stopped
+            new CountDownLatch(1).await();
+
+        } catch (Exception e) {
+            System.err.println("Router exception: " + e.toString());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Send a membership command to a running router
+     *
+     * @param args "admin", the admin URL, the command and an optional node URL
+     */
+    private static void runAdminCommand(String[] args)
+            throws RemoteException, NotBoundException, MalformedURLException {
+        if (args.length < 3) {
+            throw new IllegalArgumentException("Usage: admin <adminUrl> add|remove|list [nodeUrl]");
+        }
+        CalculatorRouterAdmin admin = (CalculatorRouterAdmin) Naming.lookup(args[1]);
+        switch (args[2]) {
+            case "add":
+                admin.addNode(args[3]);
+                break;
+            case "remove":
+                admin.removeNode(args[3]);
+                break;
+            case "list":
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown admin command: " + args[2]);
+        }
+        System.out.println("Cluster nodes: " + String.join(", ", admin.nodes()));
+    }
+
+    /**
+     * Use the registry on the given port, creating it if it is not running
+     *
+     * @param port the registry port
+     * @return the registry
+     * @throws RemoteException if the registry cannot be created
+     */
+    private static Registry startRegistry(int port) throws RemoteException {
+        try {
+            Registry registry = LocateRegistry.getRegistry(port);
+            registry.list();
+            System.out.println("RMI registry already running on port " + port);
+            return registry;
+        } catch (RemoteException e) {
+            System.out.println("Created new RMI registry on port " + port);
+            return LocateRegistry.createRegistry(port);
+        }
+    }
+
+    /**
+     * Add a calculator node and move to it the stacks it now owns
+     *
+     * @param nodeUrl the RMI URL of the node
+     * @throws RemoteException if the node cannot be reached or migration fails
+     */
+    @Override
+    public void addNode(String nodeUrl) throws RemoteException {
+        CalculatorNode node = lookupNode(nodeUrl);
+
+        membershipChange.lock();
+        try {
+            if (nodes.containsKey(nodeUrl)) {
+                System.out.println("Node already in cluster: " + nodeUrl);
+                return;
+            }
+            ConsistentHashRing newRing = new ConsistentHashRing(ring);
+            newRing.add(nodeUrl);
+            Map<String, CalculatorNode> newNodes = new HashMap<>(nodes);
+            newNodes.put(nodeUrl, node);
+
+            int moved = changeMembership(newRing, newNodes);
+            System.out.println("Node joined: " + nodeUrl + " | stacks moved: " + moved
+                    + " | nodes: " + newNodes.size());
+        } finally {
+            membershipChange.unlock();
+        }
+    }
+
+    /**
+     * Move all stacks off a calculator node and remove it from the cluster
+     *
+     * @param nodeUrl the RMI URL of the node
+     * @throws RemoteException if migration fails or it is the last node
+     */
+    @Override
+    public void removeNode(String nodeUrl) throws RemoteException {
+        membershipChange.lock();
+        try {
+            if (!nodes.containsKey(nodeUrl)) {
+                throw new RemoteException("Unknown node: " + nodeUrl);
+            }
+            if (nodes.size() == 1) {
+                throw new RemoteException("Cannot remove the last node: " + nodeUrl);
+            }
+            ConsistentHashRing newRing = new ConsistentHashRing(ring);
+            newRing.remove(nodeUrl);
+            Map<String, CalculatorNode> newNodes = new HashMap<>(nodes);
+            newNodes.remove(nodeUrl);
+
+            int moved = changeMembership(newRing, newNodes);
+            System.out.println("Node left: " + nodeUrl + " | stacks moved: " + moved
+                    + " | nodes: " + newNodes.size());
+        } finally {
+            membershipChange.unlock();
+        }
+    }
+
+    /**
+     * @return the RMI URLs of the nodes in the cluster
+     */
+    @Override
+    public String[] nodes() throws RemoteException {
+        membership.readLock().lock();
+        try {
+            return ring.nodes().toArray(new String[0]);
+        } finally {
+            membership.readLock().unlock();
+        }
+    }
+
+    /**
+     * Look up a calculator node in its registry
+     *
+     * @param nodeUrl the RMI URL of the node
+     * @return the node
+     * @throws RemoteException if the node cannot be found
+     */
+    private static CalculatorNode lookupNode(String nodeUrl) throws RemoteException {
+        try {
+            return (CalculatorNode) Naming.lookup(nodeUrl);
+        } catch (NotBoundException | MalformedURLException | ClassCastException e) {
+            throw new RemoteException("Cannot use calculator node " + nodeUrl + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Copy every stack whose owner changes to its new node, then switch to the new ring
+     *
+     * The ring in use only changes once every copy has succeeded. If a copy
+     * fails, the copies made so far are dropped, the frozen stacks are
+     * thawed and the old ring stays in use. Must be called while holding
+     * membershipChange.
+     *
+     * @param newRing the ring to switch to
+     * @param newNodes the nodes of the new ring by URL
+     * @return the number of stacks moved
+     * @throws RemoteException if a stack could not be copied; membership is then unchanged
+     */
+    private int changeMembership(ConsistentHashRing newRing, Map<String, CalculatorNode> newNodes)
+            throws RemoteException {
+        // From here on, calls for stacks whose owner changes wait for the migration
+        membership.writeLock().lock();
+        try {
+            pendingRing = newRing;
+            stackTargets.clear();
+        } finally {
+            membership.writeLock().unlock();
+        }
+
+        List<StackMove> moves = new ArrayList<>();
+        try {
+            for (Map.Entry<String, CalculatorNode> entry : nodes.entrySet()) {
+                for (String name : entry.getValue().stackNames()) {
+                    String owner = newRing.nodeFor(name);
+                    if (!owner.equals(entry.getKey())) {
+                        StackMove move = new StackMove(name, entry.getValue(), newNodes.get(owner));
+                        moves.add(move);
+                        move.copy();
+                    }
+                }
+            }
+        } catch (RemoteException e) {
+            for (StackMove move : moves) {
+                move.undo();
+            }
+            finishMigration(null, null);
+            throw new RemoteException("Migration failed, membership unchanged: " + e.getMessage(), e);
+        }
+
+        finishMigration(newRing, newNodes);
+        for (StackMove move : moves) {
+            move.dropSource();
+        }
+        return moves.size();
+    }
+
+    /**
+     * End a migration and wake the calls waiting for it
+     *
+     * @param newRing the ring to switch to, or null to keep the current one
+     * @param newNodes the nodes of the new ring, or null to keep the current ones
+     */
+    private void finishMigration(ConsistentHashRing newRing, Map<String, CalculatorNode> newNodes) {
+        membership.writeLock().lock();
+        try {
+            if (newRing != null) {
+                ring = newRing;
+                nodes.clear();
+                nodes.putAll(newNodes);
+            }
+            pendingRing = null;
+            stackTargets.clear();
+        } finally {
+            membership.writeLock().unlock();
+        }
+        synchronized (migrationMonitor) {
+            migrationsFinished++;
+            migrationMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * StackMove copies one stack to its new owner and can undo the copy
+     */
+    private static class StackMove {
+
+        private final String name;
+        private final CalculatorNode from;
+        private final CalculatorNode to;
+        private boolean frozen;
+        private boolean copying;
+
+        StackMove(String name, CalculatorNode from, CalculatorNode to) {
+            this.name = name;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Freeze the stack on its old node and copy it in chunks, bottom first
+         *
+         * The new node is always sent at least one chunk, even an empty one,
+         * so that it starts serving the stack, and takes over its version
+         *
+         * @throws RemoteException if either node fails
+         */
+        void copy() throws RemoteException {
+            FrozenStack frozenStack = from.freezeStack(name);
+            frozen = true;
+            long copied = 0;
+            int[] chunk;
+            do {
+                chunk = from.readStack(name, copied, MIGRATION_CHUNK);
+                copying = true;
+                to.putStack(name, chunk, frozenStack.getVersion());
+                copied += chunk.length;
+            } while (chunk.length > 0 && copied < frozenStack.getSize());
+        }
+
+        /**
+         * Drop the partial copy and serve the stack from its old node again
+         */
+        void undo() {
+            if (copying) {
+                try {
+                    to.dropStack(name);
+                } catch (RemoteException e) {
+                    // The new ring is never used, so a leftover copy is never served
+                    System.err.println("Failed to drop partial copy of stack '" + name + "': " + e.getMessage());
+                }
+            }
+            if (frozen) {
+                try {
+                    from.thawStack(name);
+                } catch (RemoteException e) {
+                    System.err.println("Failed to thaw stack '" + name + "': " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Drop the stack from its old node once the new ring is in use
+         */
+        void dropSource() {
+            try {
+                from.dropStack(name);
+            } catch (RemoteException e) {
+                // The old copy stays frozen, so it is never served again
+                System.err.println("Failed to drop moved stack '" + name + "': " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Run an operation on the calculator that owns a stack
+     *
+     * The membership lock is only held while finding the target. If the
+     * stack moves while the call is on its way, the call is retried on the
+     * stack's new owner.
+     *
+     * @param name the stack name
+     * @param call the operation
+     * @return the result of the operation
+     * @throws E if the operation throws it
+     * @throws RemoteException if no node is available or the call fails
+     */
+    <T, E extends Exception> T route(String name, RemoteCall<T, E> call) throws E, RemoteException {
+        long deadline = System.currentTimeMillis() + MIGRATION_WAIT;
+        while (true) {
+            Calculator target = target(name, deadline);
+            try {
+                return call.call(target);
+            } catch (RemoteException e) {
+                if (!hasMoved(e) || System.currentTimeMillis() >= deadline) {
+                    throw e;
+                }
+                stackTargets.remove(name, target);
+            }
+        }
+    }
+
+    /**
+     * Find the backend calculator for a stack, caching it until membership changes
+     *
+     * Waits while the stack is being migrated. The node is asked for the
+     * stack without holding the membership lock, so a slow node cannot hold
+     * up a membership change; the answer is only cached if the ring was not
+     * switched and the stack did not start migrating in the meantime.
+     *
+     * @param name the stack name
+     * @param deadline when to stop waiting for a migration (System.currentTimeMillis)
+     * @return the backend calculator for the stack
+     * @throws RemoteException if there are no nodes, the node cannot be reached
+     *                         or the migration takes too long
+     */
+    private Calculator target(String name, long deadline) throws RemoteException {
+        while (true) {
+            Calculator target = stackTargets.get(name);
+            if (target != null) {
+                return target;
+            }
+            long seen;
+            synchronized (migrationMonitor) {
+                seen = migrationsFinished;
+            }
+            CalculatorNode node = null;
+            ConsistentHashRing seenRing;
+            membership.readLock().lock();
+            try {
+                seenRing = ring;
+                if (!isMigrating(name)) {
+                    node = ownerOf(name);
+                }
+            } finally {
+                membership.readLock().unlock();
+            }
+            if (node == null) {
+                awaitMigration(name, seen, deadline);
+                continue;
+            }
+
+            target = name.isEmpty() ? node : node.stack(name);
+
+            membership.readLock().lock();
+            try {
+                // Cached under the lock, so a migration starting later clears it
+                if (ring == seenRing && !isMigrating(name)) {
+                    if (stackTargets.size() >= STACK_TARGET_CACHE_SIZE) {
+                        // Simple bound: start over rather than track recency on every hit
+                        stackTargets.clear();
+                    }
+                    stackTargets.put(name, target);
+                    return target;
+                }
+            } finally {
+                membership.readLock().unlock();
+            }
+            // Membership changed while we were asking the node; look again
+        }
+    }
+
+    /**
+     * Check whether a stack is being moved to another node
+     *
+     * Must be called while holding the read lock
+     *
+     * @param name the stack name
+     * @return true if the running migration changes the stack's owner
+     */
+    private boolean isMigrating(String name) {
+        return pendingRing != null && !pendingRing.nodeFor(name).equals(ring.nodeFor(name));
+    }
+
+    /**
+     * Wait until a migration finishes
+     *
+     * @param name the stack name, for the error message
+     * @param seen the value of migrationsFinished before the stack was found migrating
+     * @param deadline when to give up (System.currentTimeMillis)
+     * @throws RemoteException if the deadline passes or the wait is interrupted
+     */
+    private void awaitMigration(String name, long seen, long deadline) throws RemoteException {
+        synchronized (migrationMonitor) {
+            while (migrationsFinished == seen) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new RemoteException("Stack '" + name + "' is still being migrated, try again later.");
+                }
+                try {
+                    migrationMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RemoteException("Interrupted while waiting for stack '" + name + "' to migrate.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether a call failed because its stack is no longer on that calculator
+     *
+     * @param e the exception thrown by the call
+     * @return true if the call should be retried on the stack's current owner
+     */
+    private static boolean hasMoved(RemoteException e) {
+        return e instanceof NoSuchObjectException
+                || (e instanceof ServerException && e.getCause() instanceof StackMovedException);
+    }
+
+    /**
+     * Find the node that owns a key
+     *
+     * Must be called while holding the read lock
+     *
+     * @param key the stack name or other routing key
+     * @return the owning node
+     * @throws RemoteException if there are no nodes
+     */
+    private CalculatorNode ownerOf(String key) throws RemoteException {
+        String nodeUrl = ring.nodeFor(key);
+        if (nodeUrl == null) {
+            throw new RemoteException("No calculator nodes in the cluster");
+        }
+        return nodes.get(nodeUrl);
+    }
+
+    // The Calculator operations below act on the default stack
+
+    @Override
+    public void pushValue(int val) throws RemoteException {
+        route(DEFAULT_STACK, c -> {
+            c.pushValue(val);
+            return null;
+        });
+    }
+
+    @Override
+    public void pushOperation(String operator) throws RemoteException {
+        route(DEFAULT_STACK, c -> {
+            c.pushOperation(operator);
+            return null;
+        });
+    }
+
+    @Override
+    public int pop() throws RemoteException {
+        return route(DEFAULT_STACK, Calculator::pop);
+    }
+
+    @Override
+    public boolean isEmpty() throws RemoteException {
+        return route(DEFAULT_STACK, Calculator::isEmpty);
+    }
+
+    @Override
+    public int delayPop(int millis) throws RemoteException {
+        return route(DEFAULT_STACK, c -> c.delayPop(millis));
+    }
+
+    @Override
+    public long getVersion() throws RemoteException {
+        return route(DEFAULT_STACK, Calculator::getVersion);
+    }
+
+    @Override
+    public int executeAtomically(long expectedVersion, int[] values, String operator)
+            throws VersionConflictException, RemoteException {
+        return route(DEFAULT_STACK, c -> c.executeAtomically(expectedVersion, values, operator));
+    }
+
+    @Override
+    public int subscribe(int bufferSize) throws RemoteException {
+        return route(DEFAULT_STACK, c -> c.subscribe(bufferSize));
+    }
+
+    @Override
+    public StackEventBatch pollEvents(int subscriberId, int maxEvents, long waitMillis) throws RemoteException {
+        return route(DEFAULT_STACK, c -> c.pollEvents(subscriberId, maxEvents, waitMillis));
+    }
+
+    @Override
+    public void unsubscribe(int subscriberId) throws RemoteException {
+        route(DEFAULT_STACK, c -> {
+            c.unsubscribe(subscriberId);
+            return null;
+        });
+    }
+
+    /**
+     * Evaluate a program on the node chosen by hashing its text
+     *
+     * Programs do not touch any stack, so any node can run them; hashing
+     * sends repeats of the same program to the node that already cached it
+     */
+    @Override
+    public int evaluate(String rpnProgram) throws RemoteException {
+        CalculatorNode node;
+        membership.readLock().lock();
+        try {
+            node = ownerOf(rpnProgram == null ? "" : rpnProgram);
+        } finally {
+            membership.readLock().unlock();
+        }
+        return node.evaluate(rpnProgram);
+    }
+
+    /**
+     * Evaluate a pre-parsed program, spreading such calls across the nodes
+     */
+    @Override
+    public int evaluate(RpnProgram program) throws RemoteException {
+        CalculatorNode node;
+        membership.readLock().lock();
+        try {
+            node = ownerOf(String.valueOf(System.identityHashCode(program)));
+        } finally {
+            membership.readLock().unlock();
+        }
+        return node.evaluate(program);
+    }
+
+    /**
+     * Get a router-side calculator for a named stack
+     *
+     * Routed stacks hold no state, so a new one is exported for every request
+     * and not kept by the router; the RMI distributed garbage collector
+     * unexports it once no client holds it any more
+     *
+     * @param name the stack name, or the empty string for the default stack
+     * @return a calculator that routes every call to the node owning the stack
+     */
+    @Override
+    public Calculator stack(String name) throws RemoteException {
+        if (name == null || name.isEmpty()) {
+            return this;
+        }
+        return new RoutedStack(this, name);
+    }
+}
@@ -0,0 +1,39 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * CalculatorRouterAdmin manages cluster membership of a CalculatorRouter
+ * 
+ * The router binds this interface in the registry under its service name
+ * with "Admin" appended
+ */
+public interface CalculatorRouterAdmin extends Remote {
+    
+    /**
+     * Add a calculator node and move to it the stacks it now owns
+     * 
+     * @param nodeUrl the RMI URL of the node, e.g. rmi://localhost:1100/CalculatorService
+     *               
+     * @throws RemoteException if the node cannot be reached or migration fails
+     *                        
+     */
+    void addNode(String nodeUrl) throws RemoteException;
+    
+    /**
+     * Move all stacks off a calculator node and remove it from the cluster
+     * 
+     * @param nodeUrl the RMI URL of the node
+     *               
+     * @throws RemoteException if migration fails or it is the last node
+     *                        
+     */
+    void removeNode(String nodeUrl) throws RemoteException;
+    
+    /**
+     * @return the RMI URLs of the nodes in the cluster
+     *         
+     * @throws RemoteException if a network error occurs during the remote call
+     *                        
+     */
+    String[] nodes() throws RemoteException;
+}
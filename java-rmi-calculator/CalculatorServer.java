@@ -1,70 +1,320 @@
 import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
 import java.net.MalformedURLException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * CalculatorServer is the server bootstrap class that starts the RMI server
- * 
- * This class creates and registers the calculator service with the RMI registry
+ *
+ * This class creates and registers the calculator service with the RMI registry.
+ * On shutdown (Enter in interactive mode, SIGTERM/SIGINT in either mode) the
+ * server drains gracefully: it unbinds the service, rejects new calls, waits
+ * for in-flight calls, unexports the calculator and its named stacks and
+ * saves every stack.
  */
 public class CalculatorServer {
     
     // Default registry port for RMI
     private static final int REGISTRY_PORT = 1099;
-    
-    // Service name for binding in the registry
+
+    // Default service name for binding in the registry
     private static final String SERVICE_NAME = "CalculatorService";
+
+    // Default time to wait for in-flight calls during shutdown (milliseconds)
+    private static final long DRAIN_TIMEOUT = 30000;
+
+    // How often to check whether in-flight calls have finished (milliseconds)
+    private static final long DRAIN_POLL_INTERVAL = 50;
+
+    // Values read from the state file before they are pushed onto a stack
+    private static final int RESTORE_CHUNK = 65536;
     
+    // Idle connections are closed after this long in scale mode (milliseconds)
+    private static final String SCALE_READ_TIMEOUT = "30000";
+    
+    // Idle RMI connection threads are retired after this long in scale mode (milliseconds)
+    private static final String SCALE_THREAD_KEEP_ALIVE = "5000";
+
+    // Configuration from the command line
+    private static int registryPort = REGISTRY_PORT;
+    private static String serviceName = SERVICE_NAME;
+    private static boolean daemon = false;
+    private static boolean scaleMode = false;
+    private static int healthPort = -1;
+    private static Path stateFile = null;
+    private static long drainTimeout = DRAIN_TIMEOUT;
+    private static long maxHeapValues = -1;
+
+    // Lifecycle state
+    private static volatile boolean ready = false;
+    private static final AtomicBoolean shuttingDown = new AtomicBoolean();
+    private static final CountDownLatch stopped = new CountDownLatch(1);
+    private static HealthEndpoint healthEndpoint;
+
     /**
      * Main method to start the calculator server
-     * 
-     * @param args command line arguments (not used)
+     *
+     * @param args command line arguments, see printUsage()
      */
     public static void main(String[] args) {
+        long startNanos = System.nanoTime();
         try {
             System.out.println("Starting Calculator RMI Server...");
-            
+
+            parseArguments(args);
+
+            if (scaleMode) {
+                configureScaleMode();
+            }
+
+            // Probes come up first so supervisors can see the server is starting
+            startHealthEndpoint();
+
             // Create and start the RMI registry
             startRegistry();
-            
+
             // Create the calculator implementation
-            CalculatorImplementation calculator = new CalculatorImplementation();
-            
+            CalculatorImplementation calculator = createCalculator();
+            restoreState(calculator);
+
             // Bind the calculator service to the registry
             bindService(calculator);
-            
+
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(() -> shutdown(calculator), "calculator-shutdown"));
+            ready = true;
+
             System.out.println("Calculator RMI Server is ready and waiting for client connections.");
-            System.out.println("Service bound as: " + SERVICE_NAME);
-            System.out.println("Registry running on port: " + REGISTRY_PORT);
-            
+            System.out.println("Service bound as: " + serviceName);
+            System.out.println("Registry running on port: " + registryPort);
+            reportStartupTime(startNanos);
+
             // Keep the server running
             keepServerAlive();
-            
+
         } catch (Exception e) {
             System.err.println("Server exception: " + e.toString());
             e.printStackTrace();
             System.exit(1);
         }
     }
+
+    /**
+     * Read the command line options into the server configuration
+     *
+     * @param args command line arguments
+     * @throws IllegalArgumentException if an option is unknown or malformed
+     */
+    private static void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "scale":
+                    scaleMode = true;
+                    break;
+                case "--daemon":
+                    daemon = true;
+                    break;
+                case "--port":
+                    registryPort = Integer.parseInt(optionValue(args, ++i));
+                    break;
+                case "--name":
+                    serviceName = optionValue(args, ++i);
+                    break;
+                case "--health-port":
+                    healthPort = Integer.parseInt(optionValue(args, ++i));
+                    break;
+                case "--state-file":
+                    stateFile = Paths.get(optionValue(args, ++i));
+                    break;
+                case "--drain-timeout":
+                    drainTimeout = Long.parseLong(optionValue(args, ++i));
+                    break;
+                case "--heap-values":
+                    maxHeapValues = Long.parseLong(optionValue(args, ++i));
+                    break;
+                default:
+                    printUsage();
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    /**
+     * Return the value that follows an option
+     *
+     * @param args command line arguments
+     * @param index position of the value
+     * @return the option value
+     * @throws IllegalArgumentException if the value is missing
+     */
+    private static String optionValue(String[] args, int index) {
+        if (index >= args.length) {
+            printUsage();
+            throw new IllegalArgumentException("Missing value for option: " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * Print the supported command line options
+     */
+    private static void printUsage() {
+        System.out.println("Usage: java CalculatorServer [scale] [--daemon] [--port <port>] [--name <service>]");
+        System.out.println("                             [--health-port <port>] [--state-file <path>]");
+        System.out.println("                             [--drain-timeout <millis>] [--heap-values <count>]");
+    }
+
+    /**
+     * Create the calculator with the configured stack storage
+     *
+     * With --heap-values only roughly that many values stay on the heap and
+     * older values spill to a temporary file
+     *
+     * @return the calculator implementation
+     * @throws RemoteException if the remote object cannot be created
+     */
+    private static CalculatorImplementation createCalculator() throws RemoteException {
+        if (maxHeapValues > 0) {
+            System.out.println("Stack keeps about " + maxHeapValues + " values on the heap before spilling");
+            return new CalculatorImplementation(() -> SpillableIntStack.withHeapLimit(maxHeapValues));
+        }
+        return new CalculatorImplementation();
+    }
+
+    /**
+     * Print how long the server took to become ready
+     *
+     * JVM uptime includes class loading and JIT warm-up before main, which is
+     * the part a class data sharing archive speeds up
+     *
+     * @param startNanos System.nanoTime() at the start of main
+     */
+    private static void reportStartupTime(long startNanos) {
+        long mainMillis = (System.nanoTime() - startNanos) / 1000000;
+        long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.out.println("Startup completed in " + mainMillis + "ms (JVM uptime " + uptimeMillis + "ms)");
+    }
+
+    /**
+     * Start the health and readiness probes if a probe port was configured
+     *
+     * @throws IOException if the probe port cannot be bound
+     */
+    private static void startHealthEndpoint() throws IOException {
+        if (healthPort < 0) {
+            return;
+        }
+        healthEndpoint = new HealthEndpoint(healthPort, () -> ready);
+        healthEndpoint.start();
+    }
+
+    /**
+     * Tune the RMI TCP transport for a large number of mostly idle clients
+     * 
+     * RMI serves every open connection on its own thread. Closing idle
+     * connections and retiring idle threads quickly keeps the thread count close
+     * to the number of clients that are actually making calls. These properties
+     * must be set before the first remote object is exported. On JDK 21 and
+     * later the connections are also served on virtual threads.
+     */
+    private static void configureScaleMode() {
+        setIfAbsent("sun.rmi.transport.tcp.readTimeout", SCALE_READ_TIMEOUT);
+        setIfAbsent("sun.rmi.transport.tcp.threadKeepAliveTime", SCALE_THREAD_KEEP_ALIVE);
+        System.out.println("Scale mode enabled: idle connections close after "
+                + System.getProperty("sun.rmi.transport.tcp.readTimeout") + "ms");
+        if (useVirtualConnectionThreads()) {
+            System.out.println("RMI connections are served on virtual threads");
+        }
+    }
     
     /**
-     * Start the RMI registry on the default port
+     * Serve RMI connections on virtual threads when the JDK has them
      * 
-     * Creates a local registry if one doesn't exist
+     * RMI hands every accepted connection to a ThreadPoolExecutor inside
+     * sun.rmi.transport.tcp.TCPTransport, and the whole call, including a
+     * delayPop sleep, runs on that thread. Giving the pool a virtual thread
+     * factory makes a waiting call park instead of holding a platform thread
+     * and its stack. Virtual threads are looked up reflectively so the server
+     * still compiles and runs on older JDKs. Reaching the pool needs
+     * --add-opens java.rmi/sun.rmi.transport.tcp=ALL-UNNAMED; without it, or
+     * before JDK 21, RMI keeps its platform threads.
      * 
+     * @return true if new connections are served on virtual threads
+     */
+    private static boolean useVirtualConnectionThreads() {
+        if (Runtime.version().feature() < 21) {
+            System.out.println("Virtual threads need JDK 21 or later; RMI keeps platform threads");
+            return false;
+        }
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class)
+                    .invoke(builder, "RMI TCP Connection(virtual)-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            
+            Field pool = Class.forName("sun.rmi.transport.tcp.TCPTransport")
+                    .getDeclaredField("connectionThreadPool");
+            pool.setAccessible(true);
+            ((ThreadPoolExecutor) pool.get(null)).setThreadFactory(factory);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // setAccessible throws InaccessibleObjectException without --add-opens
+            System.out.println("Virtual threads unavailable (" + e + "); RMI keeps platform threads");
+            return false;
+        }
+    }
+    
+    /**
+     * Set a system property unless it was already given on the command line
+     * 
+     * @param key the property name
+     * @param value the value to use when the property is not set
+     */
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+    
+    /**
+     * Start the RMI registry on the configured port
+     *
+     * Creates a local registry if one doesn't exist
+     *
      * @throws RemoteException if the registry cannot be created
      */
     private static void startRegistry() throws RemoteException {
         try {
             // Try to locate existing registry
-            LocateRegistry.getRegistry(REGISTRY_PORT).list();
-            System.out.println("RMI registry already running on port " + REGISTRY_PORT);
+            LocateRegistry.getRegistry(registryPort).list();
+            System.out.println("RMI registry already running on port " + registryPort);
         } catch (RemoteException e) {
             // Registry doesn't exist, create a new one
-            Registry registry = LocateRegistry.createRegistry(REGISTRY_PORT);
-            System.out.println("Created new RMI registry on port " + REGISTRY_PORT);
+            Registry registry = LocateRegistry.createRegistry(registryPort);
+            System.out.println("Created new RMI registry on port " + registryPort);
         }
     }
     
@@ -79,8 +329,8 @@ public class CalculatorServer {
             throws RemoteException, MalformedURLException {
         
         // Construct the service URL
-        String serviceUrl = "rmi://localhost:" + REGISTRY_PORT + "/" + SERVICE_NAME;
-        
+        String serviceUrl = serviceUrl();
+
         try {
             // Bind the service
             Naming.rebind(serviceUrl, calculator);
@@ -94,21 +344,236 @@ public class CalculatorServer {
     }
     
     /**
-     * Keep the server alive by waiting for user input to shutdown
-     * 
-     * The server will continue running until the user presses Enter
+     * @return the registry URL the service is bound under
+     */
+    private static String serviceUrl() {
+        return "rmi://localhost:" + registryPort + "/" + serviceName;
+    }
+
+    /**
+     * Keep the server alive until it is shut down
+     *
+     * In interactive mode the server runs until the user presses Enter. In
+     * daemon mode it never touches standard input and runs until the process
+     * receives SIGTERM or SIGINT, so it can run under a process supervisor.
      */
     private static void keepServerAlive() {
+        if (daemon) {
+            System.out.println("\nServer is running in daemon mode. Send SIGTERM to shut down gracefully.");
+            System.out.println("==========================================");
+            try {
+                stopped.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
         System.out.println("\nServer is running. Press Enter to shutdown the server.");
         System.out.println("==========================================");
-        
+
         try {
             // Wait for user input to shutdown
             System.in.read();
             System.out.println("\nShutting down server...");
+            // The shutdown hook performs the graceful drain
             System.exit(0);
         } catch (Exception e) {
             System.err.println("Error reading input: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Drain and stop the server, run once from the shutdown hook
+     *
+     * @param calculator the calculator implementation to stop
+     */
+    private static void shutdown(CalculatorImplementation calculator) {
+        if (!shuttingDown.compareAndSet(false, true)) {
+            return;
+        }
+        System.out.println("Draining calculator server...");
+        ready = false;
+
+        // Stop new clients from finding the service, then reject new calls
+        unbindService();
+        calculator.stopAccepting();
+
+        // Wait for in-flight calls on every stack, then unexport
+        drain(calculator.allStacks());
+
+        saveState(calculator);
+
+        if (healthEndpoint != null) {
+            healthEndpoint.stop();
+        }
+        System.out.println("Calculator server stopped.");
+        stopped.countDown();
+    }
+
+    /**
+     * Remove the service from the registry, ignoring failures
+     */
+    private static void unbindService() {
+        try {
+            Naming.unbind(serviceUrl());
+            System.out.println("Calculator service unbound from: " + serviceUrl());
+        } catch (Exception e) {
+            System.err.println("Failed to unbind service: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wait until the default and named stacks can be unexported without
+     * interrupting calls, forcing the rest once the drain timeout passes
+     *
+     * RMI refuses a non-forced unexport while calls are still in progress,
+     * so retrying it is a direct check that all in-flight calls have finished
+     *
+     * @param stacks the calculators to unexport
+     * @return true if every calculator was unexported before the drain timeout
+     */
+    private static boolean drain(List<CalculatorImplementation> stacks) {
+        long deadline = System.currentTimeMillis() + drainTimeout;
+        List<CalculatorImplementation> remaining = new ArrayList<>(stacks);
+        while (true) {
+            remaining.removeIf(stack -> unexport(stack, false));
+            if (remaining.isEmpty()) {
+                System.out.println("All in-flight calls finished, " + stacks.size() + " stacks unexported.");
+                return true;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                break;
+            }
+            try {
+                Thread.sleep(DRAIN_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        System.out.println("Drain timed out after " + drainTimeout + "ms, forcing unexport of "
+                + remaining.size() + " stacks.");
+        for (CalculatorImplementation stack : remaining) {
+            unexport(stack, true);
+        }
+        return false;
+    }
+
+    /**
+     * Unexport the calculator
+     *
+     * @param calculator the calculator implementation to unexport
+     * @param force whether to unexport even if calls are in progress
+     * @return true if the calculator is no longer exported
+     */
+    private static boolean unexport(CalculatorImplementation calculator, boolean force) {
+        try {
+            return UnicastRemoteObject.unexportObject(calculator, force);
+        } catch (NoSuchObjectException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Load the stacks saved by a previous run, if a state file was configured
+     *
+     * The file holds one value per line, bottom first. The default stack
+     * comes first; each named stack follows after a "[name]" line with the
+     * name URL-encoded. Values are pushed in chunks as they are read rather
+     * than read into memory first.
+     *
+     * @param calculator the calculator implementation to restore into
+     * @throws IOException if the state file exists but cannot be read
+     */
+    private static void restoreState(CalculatorImplementation calculator) throws IOException {
+        if (stateFile == null || !Files.exists(stateFile)) {
+            return;
+        }
+        CalculatorImplementation target = calculator;
+        int[] chunk = new int[RESTORE_CHUNK];
+        int count = 0;
+        long total = 0;
+        int stacks = 1;
+        try (BufferedReader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    target.restore(chunk, count);
+                    count = 0;
+                    String name = URLDecoder.decode(line.substring(1, line.length() - 1), StandardCharsets.UTF_8);
+                    target = calculator.restoredStack(name);
+                    stacks++;
+                    continue;
+                }
+                chunk[count++] = Integer.parseInt(line);
+                total++;
+                if (count == chunk.length) {
+                    target.restore(chunk, count);
+                    count = 0;
+                }
+            }
+        }
+        target.restore(chunk, count);
+        System.out.println("Loaded " + total + " values in " + stacks + " stacks from: " + stateFile);
+    }
+
+    /**
+     * Write every non-empty stack to the state file in the format restoreState reads
+     *
+     * The file is written to a temporary path and moved into place so a crash
+     * during the write never leaves a truncated state file behind. Values are
+     * streamed from each stack to the file, so saving a deep stack does not
+     * need heap space for a copy of it
+     *
+     * @param calculator the calculator implementation to save
+     */
+    private static void saveState(CalculatorImplementation calculator) {
+        if (stateFile == null) {
+            return;
+        }
+        try {
+            Path parent = stateFile.toAbsolutePath().getParent();
+            Path temp = Files.createTempFile(parent, "calculator", ".tmp");
+            long count = 0;
+            int stacks = 0;
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (CalculatorImplementation stack : calculator.allStacks()) {
+                    String name = stack.stackName();
+                    if (!name.isEmpty()) {
+                        if (stack.isStackEmpty()) {
+                            continue;
+                        }
+                        writeLine(writer, "[" + URLEncoder.encode(name, StandardCharsets.UTF_8) + "]");
+                    }
+                    count += stack.forEachValue(val -> writeLine(writer, Integer.toString(val)));
+                    stacks++;
+                }
+            }
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Saved " + count + " values in " + stacks + " stacks to: " + stateFile);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Failed to save stack state: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write one line from inside a stream callback
+     *
+     * @param writer the writer to use
+     * @param line the line to write, without its line separator
+     * @throws UncheckedIOException if the write fails
+     */
+    private static void writeLine(BufferedWriter writer, String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
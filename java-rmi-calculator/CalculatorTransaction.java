@@ -0,0 +1,109 @@
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CalculatorTransaction collects operands on the client side and commits them
+ * together with an operation in a single remote call
+ * 
+ * The operands are reduced on their own, never mixed with values on the
+ * shared stack, and the result is pushed onto the stack. The transaction
+ * remembers the stack version seen at begin() and the commit only succeeds
+ * if no other client has changed the stack since then, so whatever the
+ * client read from the stack in between is still current when it commits
+ */
+public class CalculatorTransaction {
+    
+    private final Calculator calculator;
+    private final List<Integer> values = new ArrayList<>();
+    private long version;
+    
+    /**
+     * Constructor creates a transaction against the given calculator
+     * 
+     * @param calculator the remote calculator to run the transaction against
+     */
+    private CalculatorTransaction(Calculator calculator) {
+        this.calculator = calculator;
+    }
+    
+    /**
+     * Start a new transaction by reading the current stack version
+     * 
+     * @param calculator the remote calculator to run the transaction against
+     * @return the new transaction
+     * @throws RemoteException if a network error occurs during the remote call
+     */
+    public static CalculatorTransaction begin(Calculator calculator) throws RemoteException {
+        CalculatorTransaction transaction = new CalculatorTransaction(calculator);
+        transaction.version = calculator.getVersion();
+        return transaction;
+    }
+    
+    /**
+     * Queue an operand for the operation applied at commit
+     * 
+     * @param val the value to push
+     * @return this transaction
+     */
+    public CalculatorTransaction push(int val) {
+        values.add(val);
+        return this;
+    }
+    
+    /**
+     * Push the result of the operation on the queued operands, atomically
+     * 
+     * @param operator the operation to perform: "min", "max", "lcm", or "gcd"
+     * @return the result of the operation, now on top of the stack
+     * @throws VersionConflictException if another client changed the stack since begin()
+     * @throws RemoteException if the operation fails or a network error occurs
+     */
+    public int commit(String operator) throws VersionConflictException, RemoteException {
+        int[] pending = new int[values.size()];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = values.get(i);
+        }
+        return calculator.executeAtomically(version, pending, operator);
+    }
+    
+    /**
+     * Body is one attempt of a transaction: it may read the calculator,
+     * queues operands on the transaction and commits it
+     */
+    public interface Body {
+        
+        /**
+         * @param transaction a transaction begun just before this attempt
+         * @return the result of the commit
+         * @throws VersionConflictException if the commit conflicts
+         * @throws RemoteException if a remote call fails
+         */
+        int run(CalculatorTransaction transaction) throws VersionConflictException, RemoteException;
+    }
+    
+    /**
+     * Run a transaction, starting it over on conflicts
+     * 
+     * Each attempt begins a new transaction and runs the whole body again, so
+     * reads the body makes are repeated against the stack the commit will
+     * actually be applied to
+     * 
+     * @param calculator the remote calculator to run against
+     * @param body the transaction body
+     * @param maxAttempts the maximum number of attempts before giving up
+     * @return the result of the successful commit
+     * @throws RemoteException if every attempt conflicts or the body fails
+     */
+    public static int execute(Calculator calculator, Body body, int maxAttempts) throws RemoteException {
+        VersionConflictException lastConflict = null;
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            try {
+                return body.run(begin(calculator));
+            } catch (VersionConflictException e) {
+                lastConflict = e;
+            }
+        }
+        throw new RemoteException("Gave up after " + maxAttempts + " conflicting attempts", lastConflict);
+    }
+}
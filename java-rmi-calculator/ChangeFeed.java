@@ -0,0 +1,235 @@
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ChangeFeed fans stack events out to subscribers using pull-based cursors
+ * 
+ * Each subscriber owns a bounded buffer. Publishing never waits for a
+ * subscriber: when a buffer is full the oldest event is discarded and counted,
+ * so a slow consumer cannot hold up the calculator operations.
+ * 
+ * Undelivered events are coalesced. An operation replaces the whole stack, so
+ * it absorbs the pushes and operations still waiting in a buffer directly
+ * before it; the subscriber gets one OPERATION event with the resulting value
+ * and version, and its merged count says how many events it stands for. Pops
+ * are never merged, because each one hands a value to a client.
+ */
+public class ChangeFeed {
+    
+    // Bounds for the per-subscriber buffer size
+    private static final int MIN_BUFFER_SIZE = 1;
+    private static final int MAX_BUFFER_SIZE = 10000;
+    
+    // Longest a poll may wait for new events (milliseconds)
+    private static final long MAX_POLL_WAIT = 30000;
+    
+    // Subscribers that have not polled for this long are removed (milliseconds)
+    private static final long SUBSCRIBER_EXPIRY = 5 * 60 * 1000;
+    
+    // How often publish looks for expired subscribers (milliseconds)
+    private static final long EXPIRY_CHECK_INTERVAL = 1000;
+    
+    // Subscribers a feed accepts at most; publish visits each one under the
+    // stack lock and each may buffer up to MAX_BUFFER_SIZE events
+    private static final int MAX_SUBSCRIBERS = 100;
+    
+    private final Map<Integer, Subscriber> subscribers = new ConcurrentHashMap<>();
+    
+    // Makes the subscriber count check and the registration one step
+    private final ReentrantLock subscribeLock = new ReentrantLock();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private volatile long nextExpiryCheck;
+    
+    /**
+     * Register a new subscriber
+     * 
+     * @param bufferSize the maximum number of events kept for this subscriber
+     * @return the subscriber id to use when polling
+     * @throws RemoteException if the feed already has the maximum number of subscribers
+     */
+    public int subscribe(int bufferSize) throws RemoteException {
+        int capacity = Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, bufferSize));
+        int id;
+        subscribeLock.lock();
+        try {
+            expireIdleSubscribers(System.currentTimeMillis());
+            if (subscribers.size() >= MAX_SUBSCRIBERS) {
+                throw new RemoteException("Too many subscribers (" + MAX_SUBSCRIBERS
+                        + "), unsubscribe or let idle subscribers expire first.");
+            }
+            id = nextId.getAndIncrement();
+            subscribers.put(id, new Subscriber(capacity));
+        } finally {
+            subscribeLock.unlock();
+        }
+        System.out.println("Subscriber " + id + " registered with buffer size " + capacity);
+        return id;
+    }
+    
+    /**
+     * Remove a subscriber and discard its buffered events
+     * 
+     * @param subscriberId the id returned by subscribe
+     */
+    public void unsubscribe(int subscriberId) {
+        if (subscribers.remove(subscriberId) != null) {
+            System.out.println("Subscriber " + subscriberId + " removed");
+        }
+    }
+    
+    /**
+     * Take up to maxEvents buffered events, waiting up to waitMillis if there are none
+     * 
+     * @param subscriberId the id returned by subscribe
+     * @param maxEvents the maximum number of events to return
+     * @param waitMillis how long to wait for an event when the buffer is empty
+     * @return the batch of events, possibly empty
+     * @throws RemoteException if the subscriber is unknown or the wait is interrupted
+     */
+    public StackEventBatch poll(int subscriberId, int maxEvents, long waitMillis) throws RemoteException {
+        Subscriber subscriber = subscribers.get(subscriberId);
+        if (subscriber == null) {
+            throw new RemoteException("Unknown subscriber: " + subscriberId);
+        }
+        try {
+            return subscriber.take(Math.max(1, maxEvents), Math.min(Math.max(0, waitMillis), MAX_POLL_WAIT));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Poll interrupted.", e);
+        }
+    }
+    
+    /**
+     * Deliver an event to every subscriber without blocking
+     * 
+     * Also removes abandoned subscribers, at most once per check interval so
+     * the cost stays off the common path
+     * 
+     * @param event the event to deliver
+     */
+    public void publish(StackEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now >= nextExpiryCheck) {
+            nextExpiryCheck = now + EXPIRY_CHECK_INTERVAL;
+            expireIdleSubscribers(now);
+        }
+        for (Subscriber subscriber : subscribers.values()) {
+            subscriber.offer(event);
+        }
+    }
+    
+    /**
+     * Wake every waiting poll so it returns immediately, used when draining
+     */
+    public void close() {
+        for (Subscriber subscriber : subscribers.values()) {
+            subscriber.close();
+        }
+    }
+    
+    /**
+     * Remove subscribers that stopped polling
+     * 
+     * @param now the current time in milliseconds
+     */
+    private void expireIdleSubscribers(long now) {
+        Iterator<Map.Entry<Integer, Subscriber>> it = subscribers.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Subscriber> entry = it.next();
+            if (now - entry.getValue().lastPolled() > SUBSCRIBER_EXPIRY) {
+                it.remove();
+                System.out.println("Subscriber " + entry.getKey() + " expired");
+            }
+        }
+    }
+    
+    /**
+     * Subscriber holds the bounded event buffer for one consumer
+     */
+    private static class Subscriber {
+        
+        private final int capacity;
+        private final ArrayDeque<StackEvent> buffer;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+        private long dropped;
+        private boolean closed;
+        private volatile long lastPolled = System.currentTimeMillis();
+        
+        Subscriber(int capacity) {
+            this.capacity = capacity;
+            this.buffer = new ArrayDeque<>(capacity);
+        }
+        
+        void offer(StackEvent event) {
+            lock.lock();
+            try {
+                if (event.getType() == StackEvent.Type.OPERATION) {
+                    int merged = 0;
+                    while (!buffer.isEmpty() && buffer.peekLast().getType() != StackEvent.Type.POP) {
+                        merged += 1 + buffer.pollLast().getMergedCount();
+                    }
+                    if (merged > 0) {
+                        event = event.withMergedCount(merged);
+                    }
+                }
+                if (buffer.size() == capacity) {
+                    buffer.pollFirst();
+                    dropped++;
+                }
+                buffer.addLast(event);
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        StackEventBatch take(int maxEvents, long waitMillis) throws InterruptedException {
+            lastPolled = System.currentTimeMillis();
+            lock.lock();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+                while (buffer.isEmpty() && dropped == 0 && !closed && remaining > 0) {
+                    remaining = available.awaitNanos(remaining);
+                }
+                
+                List<StackEvent> events = new ArrayList<>(Math.min(maxEvents, buffer.size()));
+                while (events.size() < maxEvents && !buffer.isEmpty()) {
+                    events.add(buffer.pollFirst());
+                }
+                long lost = dropped;
+                dropped = 0;
+                lastPolled = System.currentTimeMillis();
+                return new StackEventBatch(events, lost);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        long lastPolled() {
+            return lastPolled;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+import java.rmi.Naming;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ClusterBenchmark drives a CalculatorRouter to measure throughput and to
+ * check that stacks survive nodes joining and leaving
+ *
+ * Usage:
+ *   java ClusterBenchmark throughput <routerUrl> <clients> <seconds>
+ *   java ClusterBenchmark migration <routerUrl> <adminUrl> <newNodeUrl>
+ */
+public class ClusterBenchmark {
+
+    // Number of named stacks used by the migration check
+    private static final int MIGRATION_STACKS = 50;
+
+    // Clients that keep pushing to their own stacks during the migration check
+    private static final int MIGRATION_WRITERS = 4;
+
+    // Delay of the pop that is in flight while a node joins
+    private static final int SLOW_POP_MILLIS = 5000;
+
+    /**
+     * Main method to run one benchmark mode
+     *
+     * @param args command line arguments, see the class comment
+     */
+    public static void main(String[] args) {
+        try {
+            if (args.length == 4 && "throughput".equals(args[0])) {
+                runThroughput(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            } else if (args.length == 4 && "migration".equals(args[0])) {
+                runMigration(args[1], args[2], args[3]);
+            } else {
+                System.err.println("Usage: java ClusterBenchmark throughput <routerUrl> <clients> <seconds>");
+                System.err.println("       java ClusterBenchmark migration <routerUrl> <adminUrl> <newNodeUrl>");
+                System.exit(2);
+            }
+        } catch (Exception e) {
+            System.err.println("Cluster benchmark failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run clients against their own named stacks for a fixed time
+     *
+     * Each iteration pushes two values, applies gcd and pops the result,
+     * which is four remote calls
+     *
+     * @param routerUrl the router service URL
+     * @param clients the number of concurrent clients
+     * @param seconds how long to run
+     */
+    private static void runThroughput(String routerUrl, int clients, int seconds) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        CountDownLatch latch = new CountDownLatch(clients);
+        AtomicLong calls = new AtomicLong();
+        AtomicInteger failures = new AtomicInteger();
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+
+        for (int i = 0; i < clients; i++) {
+            final int clientId = i + 1;
+            executor.submit(() -> {
+                try {
+                    Calculator router = (Calculator) Naming.lookup(routerUrl);
+                    Calculator calc = router.stack("bench-" + clientId);
+                    while (System.currentTimeMillis() < deadline) {
+                        calc.pushValue(12 * clientId);
+                        calc.pushValue(18 * clientId);
+                        calc.pushOperation("gcd");
+                        if (calc.pop() != 6 * clientId) {
+                            failures.incrementAndGet();
+                        }
+                        calls.addAndGet(4);
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    System.err.println("Client " + clientId + " error: " + e.getMessage());
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        latch.await(seconds + 30, TimeUnit.SECONDS);
+        executor.shutdownNow();
+
+        System.out.println("Throughput: " + (calls.get() / seconds) + " calls/s | clients: " + clients
+                + " | failures: " + failures.get());
+        if (failures.get() > 0) {
+            throw new Exception("Throughput run had " + failures.get() + " failures");
+        }
+    }
+
+    /**
+     * Fill many named stacks, add a node and then remove it again, checking
+     * after each change that every stack still holds exactly its values at
+     * the same version
+     *
+     * While this happens, writers keep pushing to their own stacks and must
+     * not lose or duplicate a value, and a delayPop is in flight during the
+     * join, which must not wait for it
+     *
+     * @param routerUrl the router service URL
+     * @param adminUrl the router admin URL
+     * @param newNodeUrl a running calculator server that is not yet in the cluster
+     */
+    private static void runMigration(String routerUrl, String adminUrl, String newNodeUrl) throws Exception {
+        Calculator router = (Calculator) Naming.lookup(routerUrl);
+        CalculatorRouterAdmin admin = (CalculatorRouterAdmin) Naming.lookup(adminUrl);
+
+        long[] versions = new long[MIGRATION_STACKS];
+        for (int i = 0; i < MIGRATION_STACKS; i++) {
+            Calculator calc = router.stack("migrate-" + i);
+            calc.pushValue(i);
+            calc.pushValue(i + 1000);
+            versions[i] = calc.getVersion();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(MIGRATION_WRITERS + 1);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Future<Integer>> writers = new ArrayList<>();
+        for (int i = 0; i < MIGRATION_WRITERS; i++) {
+            Calculator calc = router.stack("live-" + i);
+            writers.add(executor.submit(() -> {
+                int pushed = 0;
+                while (!stop.get()) {
+                    calc.pushValue(pushed++);
+                }
+                return pushed;
+            }));
+        }
+
+        Calculator slow = router.stack("slow");
+        slow.pushValue(42);
+        Future<Integer> slowPop = executor.submit(() -> slow.delayPop(SLOW_POP_MILLIS));
+        Thread.sleep(500);
+
+        long start = System.nanoTime();
+        admin.addNode(newNodeUrl);
+        long joinMillis = (System.nanoTime() - start) / 1000000;
+        System.out.println("After join, nodes: " + String.join(", ", admin.nodes()));
+        System.out.println("Join took " + joinMillis + "ms with a " + SLOW_POP_MILLIS + "ms delayPop in flight");
+        if (joinMillis >= SLOW_POP_MILLIS) {
+            throw new Exception("Join waited for the in-flight delayPop");
+        }
+        checkStacks(router, versions, false);
+
+        admin.removeNode(newNodeUrl);
+        System.out.println("After leave, nodes: " + String.join(", ", admin.nodes()));
+        checkStacks(router, versions, true);
+
+        stop.set(true);
+        for (int i = 0; i < MIGRATION_WRITERS; i++) {
+            int pushed = writers.get(i).get(60, TimeUnit.SECONDS);
+            Calculator calc = router.stack("live-" + i);
+            for (int expected = pushed - 1; expected >= 0; expected--) {
+                int val = calc.pop();
+                if (val != expected) {
+                    throw new Exception("Stack live-" + i + " popped " + val + ", expected " + expected);
+                }
+            }
+            if (!calc.isEmpty()) {
+                throw new Exception("Stack live-" + i + " has more values than were pushed");
+            }
+            System.out.println("Writer " + i + " pushed " + pushed + " values across both changes, none lost");
+        }
+
+        int popped = slowPop.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+        if (popped != 42 || !slow.isEmpty()) {
+            throw new Exception("Slow delayPop returned " + popped + ", expected 42");
+        }
+
+        System.out.println("Migration check passed for " + MIGRATION_STACKS + " stacks");
+    }
+
+    /**
+     * Check the version and top value of every migration stack, optionally emptying them
+     *
+     * A stack that moved must keep the version it had before the move, so a
+     * client's compare-and-execute sees it as unchanged
+     *
+     * @param router the router
+     * @param versions the version of each stack after the last check, updated here
+     * @param drain whether to pop both values and check the stack ends empty
+     */
+    private static void checkStacks(Calculator router, long[] versions, boolean drain) throws Exception {
+        for (int i = 0; i < MIGRATION_STACKS; i++) {
+            Calculator calc = router.stack("migrate-" + i);
+            long version = calc.getVersion();
+            if (version != versions[i]) {
+                throw new Exception("Stack migrate-" + i + " is at version " + version
+                        + " after migration, expected " + versions[i]);
+            }
+            int top = calc.pop();
+            if (top != i + 1000) {
+                throw new Exception("Stack migrate-" + i + " has top " + top + ", expected " + (i + 1000));
+            }
+            if (drain) {
+                int bottom = calc.pop();
+                if (bottom != i || !calc.isEmpty()) {
+                    throw new Exception("Stack migrate-" + i + " lost values during migration");
+                }
+            } else {
+                calc.pushValue(top);
+                versions[i] = calc.getVersion();
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ConsistentHashRing maps keys to nodes so that adding or removing a node only
+ * moves the keys that belong to that node
+ * 
+ * Every node is placed on the ring at several points (virtual nodes) to spread
+ * keys evenly. This class is not thread-safe; callers must hold their own lock.
+ */
+public class ConsistentHashRing {
+    
+    // Default number of points each node occupies on the ring
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+    
+    private final int virtualNodes;
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final List<String> nodes = new ArrayList<>();
+    
+    /**
+     * Constructor creates an empty ring
+     * 
+     * @param virtualNodes the number of points each node occupies on the ring
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Virtual nodes must be positive");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+    
+    /**
+     * Constructor copies another ring, so a membership change can be prepared
+     * without touching the ring in use
+     * 
+     * @param other the ring to copy
+     */
+    public ConsistentHashRing(ConsistentHashRing other) {
+        this.virtualNodes = other.virtualNodes;
+        this.ring.putAll(other.ring);
+        this.nodes.addAll(other.nodes);
+    }
+    
+    /**
+     * Add a node to the ring
+     * 
+     * @param node the node identifier
+     * @return false if the node was already on the ring
+     */
+    public boolean add(String node) {
+        if (nodes.contains(node)) {
+            return false;
+        }
+        nodes.add(node);
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(node + "#" + i), node);
+        }
+        return true;
+    }
+    
+    /**
+     * Remove a node from the ring
+     * 
+     * @param node the node identifier
+     * @return false if the node was not on the ring
+     */
+    public boolean remove(String node) {
+        if (!nodes.remove(node)) {
+            return false;
+        }
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.remove(hash(node + "#" + i), node);
+        }
+        return true;
+    }
+    
+    /**
+     * Find the node responsible for a key
+     * 
+     * @param key the key to place
+     * @return the owning node, or null if the ring is empty
+     */
+    public String nodeFor(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+    
+    /**
+     * @return the nodes on the ring, in the order they were added
+     */
+    public List<String> nodes() {
+        return new ArrayList<>(nodes);
+    }
+    
+    /**
+     * Hash a string to a position on the ring using the first 8 bytes of MD5
+     * 
+     * @param key the string to hash
+     * @return the ring position
+     */
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xff);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+import java.io.Serializable;
+
+/**
+ * FrozenStack describes a stack a node stopped serving so it can be migrated
+ * 
+ * The version is handed to the new owner together with the values, so the
+ * stack keeps counting from where it was and a version a client saw before
+ * the move can never match a different stack state after it
+ */
+public class FrozenStack implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final long size;
+    private final long version;
+    
+    /**
+     * Constructor creates the description of a frozen stack
+     * 
+     * @param size the number of values on the stack
+     * @param version the stack version when it was frozen
+     */
+    public FrozenStack(long size, long version) {
+        this.size = size;
+        this.version = version;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,87 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+/**
+ * HealthEndpoint serves liveness and readiness probes over plain HTTP
+ * 
+ * GET /health returns 200 while the process is running.
+ * GET /ready returns 200 once the service is bound and accepting calls,
+ * and 503 while starting up or draining.
+ * GET /stats returns the live and peak platform thread counts and the heap
+ * in use, one "name=value" per line, for load tests to report.
+ */
+public class HealthEndpoint {
+    
+    private final HttpServer server;
+    
+    /**
+     * Constructor binds the probe endpoint on the given port
+     * 
+     * @param port the HTTP port to listen on
+     * @param ready reports whether the calculator is ready for traffic
+     * @throws IOException if the port cannot be bound
+     */
+    public HealthEndpoint(int port, BooleanSupplier ready) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/health", exchange -> respond(exchange, 200, "OK"));
+        server.createContext("/ready", exchange -> {
+            if (ready.getAsBoolean()) {
+                respond(exchange, 200, "READY");
+            } else {
+                respond(exchange, 503, "NOT READY");
+            }
+        });
+        server.createContext("/stats", exchange -> respond(exchange, 200, stats()));
+    }
+    
+    /**
+     * @return the thread and heap figures served by /stats
+     */
+    private static String stats() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        return "threads=" + threads.getThreadCount() + "\n"
+                + "peakThreads=" + threads.getPeakThreadCount() + "\n"
+                + "heapUsed=" + heap.getUsed() + "\n";
+    }
+    
+    /**
+     * Start answering probes
+     */
+    public void start() {
+        server.start();
+        System.out.println("Health probes listening on port " + server.getAddress().getPort());
+    }
+    
+    /**
+     * Stop answering probes
+     */
+    public void stop() {
+        server.stop(0);
+    }
+    
+    /**
+     * Write a short plain text response and close the exchange
+     * 
+     * @param exchange the HTTP exchange
+     * @param status the HTTP status code
+     * @param body the response body
+     * @throws IOException if the response cannot be written
+     */
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Operation is one of the reductions the calculator can apply to a set of values
+ * 
+ * Values are reduced in the order given, which for the shared stack is the
+ * order they would be popped in (top first)
+ */
+public enum Operation {
+    
+    MIN, MAX, LCM, GCD;
+    
+    /**
+     * Look up an operation by its name, ignoring case
+     * 
+     * @param name the operator name: "min", "max", "lcm", or "gcd"
+     * @return the operation, or null if the name is not a supported operator
+     */
+    public static Operation fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "min":
+                return MIN;
+            case "max":
+                return MAX;
+            case "lcm":
+                return LCM;
+            case "gcd":
+                return GCD;
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Reduce the values to a single result
+     * 
+     * @param values the values to reduce
+     * @return the result, or 0 if there are no values
+     */
+    public int apply(IntStream values) {
+        switch (this) {
+            case MIN:
+                return findMin(values);
+            case MAX:
+                return findMax(values);
+            case LCM:
+                return findLCM(values);
+            default:
+                return findGCD(values);
+        }
+    }
+    
+    /**
+     * @return the operator name as clients write it
+     */
+    public String operatorName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Find the minimum value in the stream
+     * 
+     * @param values stream of integers to find minimum from
+     * @return the minimum value
+     */
+    private static int findMin(IntStream values) {
+        return values.min().orElse(0);
+    }
+    
+    /**
+     * Find the maximum value in the stream
+     * 
+     * @param values stream of integers to find maximum from
+     * @return the maximum value
+     */
+    private static int findMax(IntStream values) {
+        return values.max().orElse(0);
+    }
+    
+    /**
+     * Find the least common multiple of all values in the stream
+     * 查找流中所有值的最小公倍数
+     * 
+     * @param values stream of integers to find LCM from
+     *              要查找最小公倍数的整数流
+     * @return the least common multiple
+     *         最小公倍数
+     */
+    private static int findLCM(IntStream values) {
+        return values.map(Math::abs).reduce(Operation::lcm).orElse(0);
+    }
+    
+    /**
+     * Find the greatest common divisor of all values in the stream
+     * 
+     * @param values stream of integers to find GCD from
+     *             
+     * @return the greatest common divisor
+     */
+    private static int findGCD(IntStream values) {
+        return values.map(Math::abs).reduce(Operation::gcd).orElse(0);
+    }
+    
+    /**
+     * Calculate LCM of two numbers
+     * 
+     * @param a first number 
+     * @param b second number 
+     * @return LCM of a and b
+     */
+    private static int lcm(int a, int b) {
+        return (a * b) / gcd(a, b);
+    }
+    
+    /**
+     * Calculate GCD of two numbers using Euclidean algorithm
+     * 
+     * @param a first number 
+     * @param b second number 
+     * @return GCD of a and b
+     */
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int temp = b;
+            b = a % b;
+            a = temp;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,104 @@
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+
+/**
+ * RoutedStack is the calculator a CalculatorRouter hands out for a named stack
+ * 
+ * Every call is forwarded to whichever node owns the stack at the time of the
+ * call, so clients keep working while the stack migrates between nodes
+ */
+public class RoutedStack extends UnicastRemoteObject implements Calculator {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final CalculatorRouter router;
+    private final String name;
+    
+    /**
+     * Constructor creates the routed calculator for one stack
+     * 
+     * @param router the router that owns the cluster membership
+     * @param name the stack name
+     * @throws RemoteException if the remote object cannot be created
+     */
+    public RoutedStack(CalculatorRouter router, String name) throws RemoteException {
+        super();
+        this.router = router;
+        this.name = name;
+    }
+    
+    @Override
+    public void pushValue(int val) throws RemoteException {
+        router.route(name, c -> {
+            c.pushValue(val);
+            return null;
+        });
+    }
+    
+    @Override
+    public void pushOperation(String operator) throws RemoteException {
+        router.route(name, c -> {
+            c.pushOperation(operator);
+            return null;
+        });
+    }
+    
+    @Override
+    public int pop() throws RemoteException {
+        return router.route(name, Calculator::pop);
+    }
+    
+    @Override
+    public boolean isEmpty() throws RemoteException {
+        return router.route(name, Calculator::isEmpty);
+    }
+    
+    @Override
+    public int delayPop(int millis) throws RemoteException {
+        return router.route(name, c -> c.delayPop(millis));
+    }
+    
+    @Override
+    public long getVersion() throws RemoteException {
+        return router.route(name, Calculator::getVersion);
+    }
+    
+    @Override
+    public int executeAtomically(long expectedVersion, int[] values, String operator)
+            throws VersionConflictException, RemoteException {
+        return router.route(name, c -> c.executeAtomically(expectedVersion, values, operator));
+    }
+    
+    @Override
+    public int subscribe(int bufferSize) throws RemoteException {
+        return router.route(name, c -> c.subscribe(bufferSize));
+    }
+    
+    @Override
+    public StackEventBatch pollEvents(int subscriberId, int maxEvents, long waitMillis) throws RemoteException {
+        return router.route(name, c -> c.pollEvents(subscriberId, maxEvents, waitMillis));
+    }
+    
+    @Override
+    public void unsubscribe(int subscriberId) throws RemoteException {
+        router.route(name, c -> {
+            c.unsubscribe(subscriberId);
+            return null;
+        });
+    }
+    
+    @Override
+    public int evaluate(String rpnProgram) throws RemoteException {
+        return router.evaluate(rpnProgram);
+    }
+    
+    @Override
+    public int evaluate(RpnProgram program) throws RemoteException {
+        return router.evaluate(program);
+    }
+    
+    @Override
+    public Calculator stack(String otherName) throws RemoteException {
+        return router.stack(otherName);
+    }
+}
@@ -0,0 +1,184 @@
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * RpnProgram is a parsed reverse Polish notation program for the calculator
+ *
+ * The text form is a whitespace separated list of tokens. An integer pushes
+ * itself. An operator name ("min", "max", "lcm", "gcd") reduces values with
+ * the same semantics as pushOperation; on its own it reduces every value on
+ * the stack, while a ":n" suffix reduces only the top n values. For example
+ * gcd(lcm(a, b), max(c, d)) is written as "a b lcm:2 c d max:2 gcd".
+ *
+ * Programs can be parsed on the client and sent in this compiled form, so the
+ * server does not have to parse them again. Each evaluation runs on its own
+ * scratch stack and never touches the shared calculator stack.
+ */
+public class RpnProgram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Opcode for pushing the literal that follows it
+    private static final int PUSH = -1;
+
+    // Arity meaning "every value on the stack"
+    private static final int ALL = 0;
+
+    // Largest number of instructions a single program may contain
+    private static final int MAX_INSTRUCTIONS = 100000;
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    // Pairs of (opcode, argument): (PUSH, value) or (operation ordinal, arity)
+    private final int[] code;
+
+    /**
+     * Constructor wraps already compiled code
+     *
+     * @param code the instruction pairs
+     */
+    private RpnProgram(int[] code) {
+        this.code = code;
+    }
+
+    /**
+     * Parse a program from its text form
+     *
+     * @param source the program text, e.g. "12 18 lcm:2 7 9 max:2 gcd"
+     * @return the parsed program
+     * @throws IllegalArgumentException if the program is empty or has an invalid token
+     */
+    public static RpnProgram parse(String source) {
+        if (source == null || source.trim().isEmpty()) {
+            throw new IllegalArgumentException("Empty RPN program");
+        }
+        String[] tokens = source.trim().split("\\s+");
+        if (tokens.length > MAX_INSTRUCTIONS) {
+            throw new IllegalArgumentException("RPN program too long: " + tokens.length + " tokens");
+        }
+
+        int[] code = new int[tokens.length * 2];
+        int depth = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (isNumber(token)) {
+                code[2 * i] = PUSH;
+                code[2 * i + 1] = parseValue(token);
+                depth++;
+            } else {
+                int colon = token.indexOf(':');
+                String name = colon < 0 ? token : token.substring(0, colon);
+                Operation operation = Operation.fromName(name);
+                if (operation == null) {
+                    throw new IllegalArgumentException("Invalid token: " + token);
+                }
+                int arity = colon < 0 ? ALL : parseArity(token, token.substring(colon + 1));
+                int consumed = arity == ALL ? depth : arity;
+                if (consumed == 0 || consumed > depth) {
+                    throw new IllegalArgumentException("Not enough values for " + token
+                            + " at position " + (i + 1));
+                }
+                code[2 * i] = operation.ordinal();
+                code[2 * i + 1] = arity;
+                depth = depth - consumed + 1;
+            }
+        }
+        return new RpnProgram(code);
+    }
+
+    /**
+     * Run the program on a private scratch stack
+     *
+     * @return the value on top of the scratch stack when the program ends
+     * @throws IllegalArgumentException if the program is malformed
+     * @throws ArithmeticException if an operation divides by zero
+     */
+    public int evaluate() {
+        if (code == null || code.length == 0 || code.length % 2 != 0 || code.length > 2 * MAX_INSTRUCTIONS) {
+            throw new IllegalArgumentException("Malformed RPN program");
+        }
+
+        int[] stack = new int[16];
+        int depth = 0;
+        for (int pc = 0; pc < code.length; pc += 2) {
+            int opcode = code[pc];
+            int argument = code[pc + 1];
+            if (opcode == PUSH) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = argument;
+                continue;
+            }
+
+            if (opcode < 0 || opcode >= OPERATIONS.length || argument < 0) {
+                throw new IllegalArgumentException("Malformed RPN instruction at " + (pc / 2 + 1));
+            }
+            int consumed = argument == ALL ? depth : argument;
+            if (consumed == 0 || consumed > depth) {
+                throw new IllegalArgumentException("Not enough values at instruction " + (pc / 2 + 1));
+            }
+
+            // Reduce top-down, the same order pushOperation pops the shared stack in
+            final int[] values = stack;
+            final int top = depth - 1;
+            int result = OPERATIONS[opcode].apply(IntStream.range(0, consumed).map(k -> values[top - k]));
+            depth -= consumed;
+            stack[depth++] = result;
+        }
+
+        if (depth == 0) {
+            throw new IllegalArgumentException("RPN program left nothing on the stack");
+        }
+        return stack[depth - 1];
+    }
+
+    /**
+     * @return the number of instructions in the program
+     */
+    public int size() {
+        return code.length / 2;
+    }
+
+    /**
+     * @param token a program token
+     * @return true if the token is an integer literal
+     */
+    private static boolean isNumber(String token) {
+        char first = token.charAt(0);
+        return Character.isDigit(first) || ((first == '-' || first == '+') && token.length() > 1
+                && Character.isDigit(token.charAt(1)));
+    }
+
+    /**
+     * @param token an integer literal
+     * @return its value
+     * @throws IllegalArgumentException if the literal does not fit in an int
+     */
+    private static int parseValue(String token) {
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + token);
+        }
+    }
+
+    /**
+     * @param token the whole operator token, for error messages
+     * @param text the text after the colon
+     * @return the operator arity
+     * @throws IllegalArgumentException if the arity is not a positive integer
+     */
+    private static int parseArity(String token, String text) {
+        try {
+            int arity = Integer.parseInt(text);
+            if (arity < 1) {
+                throw new IllegalArgumentException("Operator arity must be positive: " + token);
+            }
+            return arity;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid operator arity: " + token);
+        }
+    }
+}
@@ -0,0 +1,475 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * SpillableIntStack is a stack of primitive ints stored in fixed-size segments
+ *
+ * The top segments live on the heap. Once more than maxHeapSegments full
+ * segments exist, the oldest ones are written to a temporary spill file and
+ * only read back when the stack shrinks down to them, so heap usage stays flat
+ * no matter how deep the stack grows. The file is accessed through a direct
+ * buffer, so spilled values never pass through the Java heap.
+ *
+ * This class is not thread-safe; callers must hold their own lock. I/O
+ * failures on the spill file are reported as UncheckedIOException and leave
+ * the stack as it was before the failed call.
+ */
+public class SpillableIntStack {
+
+    // Number of ints per segment (256 KB per segment)
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 16;
+
+    private static final int BYTES_PER_INT = 4;
+
+    // Size of the top segment of a new or cleared stack; it doubles up to the
+    // segment size as values are pushed, so empty stacks stay small
+    private static final int INITIAL_TOP_SIZE = 16;
+
+    private final int segmentSize;
+    private final int maxHeapSegments;
+
+    // Full on-heap segments, oldest first
+    private final ArrayDeque<int[]> heapSegments = new ArrayDeque<>();
+
+    // The segment currently being pushed into and how much of it is used.
+    // Shorter than segmentSize until the stack first fills a whole segment
+    private int[] top;
+    private int topCount;
+
+    // A free segment kept around to avoid reallocating on push/pop boundaries
+    private int[] spare;
+
+    // Spill file holding the oldest segments, created on first spill
+    private Path spillPath;
+    private FileChannel spillChannel;
+    private ByteBuffer ioBuffer;
+    private long spilledSegments;
+
+    /**
+     * Constructor creates a stack that never spills to disk
+     */
+    public SpillableIntStack() {
+        this(DEFAULT_SEGMENT_SIZE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructor creates a stack that spills once it holds more than the
+     * given number of full segments on the heap
+     *
+     * @param segmentSize the number of ints per segment
+     * @param maxHeapSegments the number of full segments kept on the heap
+     */
+    public SpillableIntStack(int segmentSize, int maxHeapSegments) {
+        if (segmentSize < 1 || maxHeapSegments < 1) {
+            throw new IllegalArgumentException("Segment size and heap segments must be positive");
+        }
+        this.segmentSize = segmentSize;
+        this.maxHeapSegments = maxHeapSegments;
+        this.top = new int[Math.min(segmentSize, INITIAL_TOP_SIZE)];
+    }
+
+    /**
+     * Create a stack that keeps roughly maxHeapValues values on the heap
+     *
+     * @param maxHeapValues the number of values to keep on the heap before spilling
+     * @return the new stack
+     */
+    public static SpillableIntStack withHeapLimit(long maxHeapValues) {
+        long segments = Math.max(1, (maxHeapValues + DEFAULT_SEGMENT_SIZE - 1) / DEFAULT_SEGMENT_SIZE);
+        return new SpillableIntStack(DEFAULT_SEGMENT_SIZE, (int) Math.min(Integer.MAX_VALUE, segments));
+    }
+
+    /**
+     * Push a value onto the stack
+     *
+     * @param val the value to push
+     */
+    public void push(int val) {
+        if (topCount == top.length && top.length < segmentSize) {
+            top = Arrays.copyOf(top, Math.min(segmentSize, top.length * 2));
+        } else if (topCount == segmentSize) {
+            // Make room on the heap first, so a failed spill leaves the stack as it was
+            if (heapSegments.size() >= maxHeapSegments) {
+                spillOldest();
+            }
+            heapSegments.addLast(top);
+            top = takeSpare();
+            topCount = 0;
+        }
+        top[topCount++] = val;
+    }
+
+    /**
+     * Pop the top value from the stack
+     *
+     * @return the popped value
+     * @throws NoSuchElementException if the stack is empty
+     */
+    public int pop() {
+        if (topCount == 0) {
+            refillTop();
+        }
+        return top[--topCount];
+    }
+
+    /**
+     * @return true if the stack holds no values
+     */
+    public boolean isEmpty() {
+        return topCount == 0 && heapSegments.isEmpty() && spilledSegments == 0;
+    }
+
+    /**
+     * @return the number of values on the stack
+     */
+    public long size() {
+        return topCount + ((long) heapSegments.size() + spilledSegments) * segmentSize;
+    }
+
+    /**
+     * @return the number of values currently held in the spill file
+     */
+    public long spilledSize() {
+        return spilledSegments * segmentSize;
+    }
+
+    /**
+     * Remove every value and release the spill file space
+     */
+    public void clear() {
+        heapSegments.clear();
+        top = new int[Math.min(segmentSize, INITIAL_TOP_SIZE)];
+        topCount = 0;
+        spare = null;
+        if (spilledSegments > 0) {
+            spilledSegments = 0;
+            try {
+                spillChannel.truncate(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to truncate stack spill file", e);
+            }
+        }
+    }
+
+    /**
+     * Stream the values from the top of the stack to the bottom without removing them
+     *
+     * Spilled segments are read sequentially through a reusable direct buffer.
+     * The stack must not be modified while the stream is being consumed.
+     *
+     * @return the values, top first
+     */
+    public IntStream topDown() {
+        return StreamSupport.intStream(
+                Spliterators.spliterator(new TopDownIterator(), size(),
+                        Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Stream the values from the bottom of the stack to the top without removing them
+     *
+     * Like topDown(), spilled segments are read through the reusable direct
+     * buffer, so the values are never all held in memory at once. The stack
+     * must not be modified while the stream is being consumed.
+     *
+     * @param from the number of values to skip at the bottom of the stack
+     * @return the values above the first from values, bottom first
+     */
+    public IntStream bottomUp(long from) {
+        if (from < 0) {
+            throw new IllegalArgumentException("Negative start position: " + from);
+        }
+        return StreamSupport.intStream(
+                Spliterators.spliterator(new BottomUpIterator(from), Math.max(0, size() - from),
+                        Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Copy the stack into an array, bottom first
+     *
+     * @return the values on the stack
+     */
+    public int[] toArray() {
+        long size = size();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Stack too large to copy: " + size);
+        }
+        int[] values = new int[(int) size];
+        int index = values.length;
+        PrimitiveIterator.OfInt it = new TopDownIterator();
+        while (it.hasNext()) {
+            values[--index] = it.nextInt();
+        }
+        return values;
+    }
+
+    /**
+     * @return the spill file, or null if the stack has never spilled
+     */
+    Path spillPath() {
+        return spillPath;
+    }
+
+    /**
+     * Delete the spill file, if one was created
+     */
+    public void close() {
+        clear();
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+                Files.deleteIfExists(spillPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete stack spill file", e);
+            }
+            spillChannel = null;
+        }
+    }
+
+    /**
+     * Move the oldest on-heap segment to the end of the spill file
+     *
+     * The segment only leaves the heap once it has been written, so a failed
+     * write loses nothing.
+     */
+    private void spillOldest() {
+        int[] segment = heapSegments.peekFirst();
+        try {
+            ensureSpillFile();
+            ioBuffer.clear();
+            ioBuffer.asIntBuffer().put(segment);
+            long position = spilledSegments * segmentSize * BYTES_PER_INT;
+            while (ioBuffer.hasRemaining()) {
+                position += spillChannel.write(ioBuffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill stack segment", e);
+        }
+        heapSegments.pollFirst();
+        spilledSegments++;
+        spare = segment;
+    }
+
+    /**
+     * Make the newest stored segment the top segment once the top runs empty
+     *
+     * A spilled segment is only dropped from the file once it has been read
+     * back, so a failed read or truncate loses nothing.
+     */
+    private void refillTop() {
+        if (!heapSegments.isEmpty()) {
+            if (top.length == segmentSize) {
+                spare = top;
+            }
+            top = heapSegments.pollLast();
+        } else if (spilledSegments > 0) {
+            long newest = spilledSegments - 1;
+            if (top.length < segmentSize) {
+                top = takeSpare();
+            }
+            readSegment(newest).get(top);
+            try {
+                spillChannel.truncate(newest * segmentSize * BYTES_PER_INT);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to truncate stack spill file", e);
+            }
+            spilledSegments = newest;
+        } else {
+            throw new NoSuchElementException("Stack is empty");
+        }
+        topCount = segmentSize;
+    }
+
+    /**
+     * Read one spilled segment into the shared direct buffer
+     *
+     * @param index the segment number, 0 being the oldest
+     * @return an int view over the segment
+     */
+    private IntBuffer readSegment(long index) {
+        try {
+            ioBuffer.clear();
+            long position = index * segmentSize * BYTES_PER_INT;
+            while (ioBuffer.hasRemaining()) {
+                int read = spillChannel.read(ioBuffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of stack spill file");
+                }
+                position += read;
+            }
+            ioBuffer.flip();
+            return ioBuffer.asIntBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read stack spill file", e);
+        }
+    }
+
+    /**
+     * Create the spill file and its I/O buffer the first time they are needed
+     *
+     * @throws IOException if the file cannot be created
+     */
+    private void ensureSpillFile() throws IOException {
+        if (spillChannel != null) {
+            return;
+        }
+        Path path = Files.createTempFile("calculator-stack", ".spill");
+        path.toFile().deleteOnExit();
+        try {
+            spillChannel = openSpillChannel(path);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        spillPath = path;
+        ioBuffer = ByteBuffer.allocateDirect(segmentSize * BYTES_PER_INT);
+        System.out.println("Stack spilling to: " + spillPath);
+    }
+
+    /**
+     * Open the spill file for reading and writing; tests override this to
+     * inject I/O failures
+     *
+     * @param path the spill file
+     * @return the channel to spill through
+     * @throws IOException if the file cannot be opened
+     */
+    FileChannel openSpillChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return a free segment array
+     */
+    private int[] takeSpare() {
+        if (spare != null) {
+            int[] segment = spare;
+            spare = null;
+            return segment;
+        }
+        return new int[segmentSize];
+    }
+
+    /**
+     * BottomUpIterator walks the spilled segments, the heap segments and then
+     * the top segment, each from its first value to its last
+     */
+    private class BottomUpIterator implements PrimitiveIterator.OfInt {
+
+        private final Iterator<int[]> heapIterator = heapSegments.iterator();
+        private long nextSpilled;
+        private boolean topDone;
+        private int[] heapSegment;
+        private IntBuffer spilledSegment;
+        private int index;
+        private int end;
+
+        BottomUpIterator(long from) {
+            if (from >= size()) {
+                nextSpilled = spilledSegments;
+                while (heapIterator.hasNext()) {
+                    heapIterator.next();
+                }
+                topDone = true;
+                return;
+            }
+
+            // Skip whole segments without reading them, then position inside the first one
+            long segment = from / segmentSize;
+            nextSpilled = Math.min(segment, spilledSegments);
+            for (long skipped = spilledSegments; skipped < segment; skipped++) {
+                heapIterator.next();
+            }
+            hasNext();
+            index = (int) (from % segmentSize);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (index == end) {
+                if (nextSpilled < spilledSegments) {
+                    spilledSegment = readSegment(nextSpilled++);
+                    heapSegment = null;
+                    end = segmentSize;
+                } else if (heapIterator.hasNext()) {
+                    heapSegment = heapIterator.next();
+                    spilledSegment = null;
+                    end = segmentSize;
+                } else if (!topDone) {
+                    topDone = true;
+                    heapSegment = top;
+                    spilledSegment = null;
+                    end = topCount;
+                } else {
+                    return false;
+                }
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int value = heapSegment != null ? heapSegment[index] : spilledSegment.get(index);
+            index++;
+            return value;
+        }
+    }
+
+    /**
+     * TopDownIterator walks the top segment, the heap segments and then the
+     * spilled segments, each from its last value to its first
+     */
+    private class TopDownIterator implements PrimitiveIterator.OfInt {
+
+        private final Iterator<int[]> heapIterator = heapSegments.descendingIterator();
+        private long nextSpilled = spilledSegments - 1;
+        private int[] heapSegment = top;
+        private IntBuffer spilledSegment;
+        private int index = topCount;
+
+        @Override
+        public boolean hasNext() {
+            while (index == 0) {
+                if (heapIterator.hasNext()) {
+                    heapSegment = heapIterator.next();
+                    spilledSegment = null;
+                } else if (nextSpilled >= 0) {
+                    spilledSegment = readSegment(nextSpilled--);
+                    heapSegment = null;
+                } else {
+                    return false;
+                }
+                index = segmentSize;
+            }
+            return true;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            index--;
+            return heapSegment != null ? heapSegment[index] : spilledSegment.get(index);
+        }
+    }
+}
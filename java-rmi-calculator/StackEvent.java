@@ -0,0 +1,94 @@
+import java.io.Serializable;
+
+/**
+ * StackEvent describes a single change to the shared stack
+ * 
+ * Events are delivered to subscribers of the change feed in the order the
+ * changes were applied. An OPERATION event may stand for several changes
+ * that were coalesced while waiting in a subscriber's buffer
+ */
+public class StackEvent implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * The kind of change that happened to the stack
+     */
+    public enum Type {
+        PUSH,
+        OPERATION,
+        POP
+    }
+    
+    private final Type type;
+    private final int value;
+    private final String operator;
+    private final long version;
+    private final int mergedCount;
+    
+    /**
+     * Constructor creates an immutable event
+     * 
+     * @param type the kind of change
+     * @param value the pushed value, the operation result or the popped value
+     * @param operator the operator for OPERATION events, null otherwise
+     * @param version the stack version after the change
+     */
+    public StackEvent(Type type, int value, String operator, long version) {
+        this(type, value, operator, version, 0);
+    }
+    
+    /**
+     * Constructor creates an immutable event that absorbed earlier events
+     * 
+     * @param type the kind of change
+     * @param value the pushed value, the operation result or the popped value
+     * @param operator the operator for OPERATION events, null otherwise
+     * @param version the stack version after the change
+     * @param mergedCount the number of earlier events coalesced into this one
+     */
+    private StackEvent(Type type, int value, String operator, long version, int mergedCount) {
+        this.type = type;
+        this.value = value;
+        this.operator = operator;
+        this.version = version;
+        this.mergedCount = mergedCount;
+    }
+    
+    /**
+     * @param mergedCount the number of earlier events coalesced into this one
+     * @return a copy of this event carrying the merged count
+     */
+    public StackEvent withMergedCount(int mergedCount) {
+        return new StackEvent(type, value, operator, version, mergedCount);
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public int getValue() {
+        return value;
+    }
+    
+    public String getOperator() {
+        return operator;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public int getMergedCount() {
+        return mergedCount;
+    }
+    
+    @Override
+    public String toString() {
+        if (type == Type.OPERATION) {
+            String merged = mergedCount > 0 ? " (+" + mergedCount + " merged)" : "";
+            return "v" + version + " " + type + " " + operator + " = " + value + merged;
+        }
+        return "v" + version + " " + type + " " + value;
+    }
+}
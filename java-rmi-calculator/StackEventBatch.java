@@ -0,0 +1,39 @@
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * StackEventBatch is the result of one poll on the change feed
+ * 
+ * If the subscriber fell behind and its buffer overflowed, the oldest events
+ * were discarded and droppedCount tells how many were lost before this batch
+ */
+public class StackEventBatch implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final List<StackEvent> events;
+    private final long droppedCount;
+    
+    /**
+     * Constructor creates a batch of events
+     * 
+     * @param events the events in the order they happened
+     * @param droppedCount the number of events discarded since the previous poll
+     */
+    public StackEventBatch(List<StackEvent> events, long droppedCount) {
+        this.events = events;
+        this.droppedCount = droppedCount;
+    }
+    
+    public List<StackEvent> getEvents() {
+        return events;
+    }
+    
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+    
+    public boolean isEmpty() {
+        return events.isEmpty() && droppedCount == 0;
+    }
+}
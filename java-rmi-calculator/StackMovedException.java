@@ -0,0 +1,26 @@
+import java.rmi.RemoteException;
+
+/**
+ * StackMovedException signals that a stack is no longer served by the
+ * calculator object that received the call
+ * 
+ * A cluster router freezes a stack while migrating it to another node and
+ * retires it once the move is complete; a server also retires empty named
+ * stacks that have been idle for a long time. Clients that go through the router
+ * never see this exception, because the router looks up the new owner and
+ * retries the call. Clients holding a direct reference should ask the
+ * server for the stack again with stack(name).
+ */
+public class StackMovedException extends RemoteException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /**
+     * Constructor creates the exception for a named stack
+     * 
+     * @param name the stack name, the empty string for the default stack
+     */
+    public StackMovedException(String name) {
+        super("Stack '" + name + "' has moved, look it up again.");
+    }
+}
@@ -1,8 +1,18 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * TestMultipleClients tests the calculator server with multiple concurrent clients
@@ -15,12 +25,40 @@ public class TestMultipleClients {
     private static final String SERVICE_URL = "rmi://localhost:1099/CalculatorService";
     private static final int NUM_CLIENTS = 5;
     
+    // Default number of clients for the scale test
+    private static final int NUM_SCALE_CLIENTS = 10000;
+    
+    // How long each scale test client waits inside delayPop (milliseconds)
+    private static final int SCALE_DELAY_MILLIS = 1000;
+    
+    // Default limit for the whole scale run (milliseconds). Every client sleeps
+    // at the same time, so the run should take a few delays, not one per client
+    private static final long SCALE_MAX_MILLIS = 20000;
+    
     /**
      * Main method to run multiple client tests
      * 
-     * @param args command line arguments (not used)
+     * @param args command line arguments:
+     *            args[0] - "scale" to run only the scale test (optional)
+     *            args[1] - number of scale test clients (optional)
+     *            args[2] - longest the scale run may take, in milliseconds (optional)
+     *            args[3] - the server's --health-port, to report its threads and heap (optional)
      */
     public static void main(String[] args) {
+        if (args.length > 0 && "scale".equalsIgnoreCase(args[0])) {
+            int clients = args.length > 1 ? Integer.parseInt(args[1]) : NUM_SCALE_CLIENTS;
+            long maxMillis = args.length > 2 ? Long.parseLong(args[2]) : SCALE_MAX_MILLIS;
+            int healthPort = args.length > 3 ? Integer.parseInt(args[3]) : -1;
+            try {
+                testScaleClients(clients, maxMillis, healthPort);
+            } catch (Exception e) {
+                System.err.println("Scale test failed: " + e.getMessage());
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
+        
         System.out.println("Starting multiple client test with " + NUM_CLIENTS + " clients...");
         
         
@@ -35,6 +73,26 @@ public class TestMultipleClients {
             
             Thread.sleep(2000); // Wait between tests
             
+            // Test atomic operations with optimistic concurrency
+            testTransactionalOperations();
+            
+            Thread.sleep(2000); // Wait between tests
+            
+            // Test the change feed seen by a subscriber
+            testChangeFeed();
+            
+            Thread.sleep(2000); // Wait between tests
+            
+            // Test whole-program evaluation
+            testEvaluate();
+            
+            Thread.sleep(2000); // Wait between tests
+            
+            // Test per-client named stacks
+            testNamedStacks();
+            
+            Thread.sleep(2000); // Wait between tests
+            
             // Test concurrent pop operations
             testConcurrentPopOperations();
             
@@ -136,11 +194,311 @@ public class TestMultipleClients {
         System.out.println("Concurrent operations completed 并发操作完成");
     }
     
+    /**
+     * Test multiple clients running atomic calculations concurrently
+     * 
+     * Unlike testConcurrentOperations, every client must get a result computed
+     * only from its own operands, even with another client's value already on
+     * the shared stack. Each result is pushed onto the stack above the values
+     * that were already there, and a commit that lost a race changes nothing
+     */
+    private static void testTransactionalOperations() throws Exception {
+        System.out.println("\n=== Test 3: Transactional Operations ===");
+        
+        // Start from an empty stack so results depend only on each client's values
+        Calculator setupCalc = (Calculator) Naming.lookup(SERVICE_URL);
+        while (!setupCalc.isEmpty()) {
+            setupCalc.pop();
+        }
+        
+        // A value another client pushed earlier must not take part in the calculation
+        setupCalc.pushValue(7);
+        int bystanderResult = CalculatorTransaction.execute(setupCalc,
+                tx -> tx.push(6).push(9).commit("gcd"), 5);
+        System.out.println("Atomic gcd(6, 9) with 7 on the stack: " + bystanderResult);
+        if (bystanderResult != 3 || setupCalc.pop() != 3) {
+            throw new Exception("Atomic calculation used a value from the shared stack");
+        }
+        
+        // A stale version must be rejected without touching the stack
+        long versionBefore = setupCalc.getVersion();
+        try {
+            setupCalc.executeAtomically(versionBefore - 1, new int[] {6, 9}, "gcd");
+            throw new Exception("Atomic calculation accepted a stale version");
+        } catch (VersionConflictException e) {
+            System.out.println("Stale version rejected: " + e.getMessage());
+        }
+        if (setupCalc.getVersion() != versionBefore) {
+            throw new Exception("Rejected atomic calculation changed the stack");
+        }
+        
+        // A push landing between begin and commit makes the body run again
+        Calculator otherCalc = (Calculator) Naming.lookup(SERVICE_URL);
+        AtomicInteger attempts = new AtomicInteger();
+        int retriedResult = CalculatorTransaction.execute(setupCalc, tx -> {
+            if (attempts.incrementAndGet() == 1) {
+                otherCalc.pushValue(11);
+            }
+            return tx.push(6).push(9).commit("gcd");
+        }, 5);
+        int retriedTop = setupCalc.pop();
+        int interleaved = setupCalc.pop();
+        System.out.println("Atomic gcd after an interleaved push: " + retriedResult
+                + " in " + attempts.get() + " attempts");
+        if (retriedResult != 3 || attempts.get() != 2 || retriedTop != 3 || interleaved != 11) {
+            throw new Exception("Conflicting commit was not retried on the current stack");
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_CLIENTS);
+        CountDownLatch latch = new CountDownLatch(NUM_CLIENTS);
+        AtomicInteger failures = new AtomicInteger();
+        
+        for (int i = 0; i < NUM_CLIENTS; i++) {
+            final int clientId = i + 1;
+            executor.submit(() -> {
+                try {
+                    Calculator calc = (Calculator) Naming.lookup(SERVICE_URL);
+                    
+                    // Another client's push can land between begin and commit
+                    if (clientId % 2 == 0) {
+                        calc.pushValue(100 + clientId);
+                    }
+                    
+                    int result = CalculatorTransaction.execute(calc,
+                            tx -> tx.push(6 * clientId).push(9 * clientId).commit("gcd"), 50);
+                    
+                    System.out.println("Client " + clientId + " atomic gcd: " + result);
+                    if (result != 3 * clientId) {
+                        failures.incrementAndGet();
+                        System.err.println("Client " + clientId + " expected " + (3 * clientId));
+                    }
+                    
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    System.err.println("Client " + clientId + " error: " + e.getMessage());
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        
+        latch.await(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        
+        if (failures.get() > 0) {
+            throw new Exception("Transactional operations test failed for " + failures.get() + " clients");
+        }
+        
+        // Every push and every result is on the stack exactly once, above the 7
+        List<Integer> expected = new ArrayList<>();
+        for (int clientId = 1; clientId <= NUM_CLIENTS; clientId++) {
+            expected.add(3 * clientId);
+            if (clientId % 2 == 0) {
+                expected.add(100 + clientId);
+            }
+        }
+        List<Integer> popped = new ArrayList<>();
+        while (!setupCalc.isEmpty()) {
+            popped.add(setupCalc.pop());
+        }
+        int bottom = popped.isEmpty() ? 0 : popped.remove(popped.size() - 1);
+        Collections.sort(expected);
+        Collections.sort(popped);
+        if (bottom != 7 || !popped.equals(expected)) {
+            throw new Exception("Expected " + expected + " above 7 but found " + popped + " above " + bottom);
+        }
+        System.out.println("Transactional operations completed");
+    }
+    
+    /**
+     * Test that a subscriber sees changes made by another client, in order,
+     * with undelivered pushes coalesced into the following operation, and that
+     * a slow subscriber loses only its oldest events
+     */
+    private static void testChangeFeed() throws Exception {
+        System.out.println("\n=== Test 4: Change Feed ===");
+        
+        Calculator watcher = (Calculator) Naming.lookup(SERVICE_URL);
+        Calculator worker = (Calculator) Naming.lookup(SERVICE_URL);
+        
+        int subscriberId = watcher.subscribe(100);
+        int slowSubscriberId = watcher.subscribe(2);
+        try {
+            worker.pushValue(4);
+            worker.pushValue(6);
+            worker.pushOperation("gcd");
+            worker.pop();
+            
+            StackEventBatch batch = watcher.pollEvents(subscriberId, 10, 1000);
+            System.out.println("Subscriber saw: " + batch.getEvents());
+            
+            // The two undelivered pushes are folded into the gcd event
+            StackEvent.Type[] expected = {StackEvent.Type.OPERATION, StackEvent.Type.POP};
+            boolean matches = batch.getEvents().size() == expected.length && batch.getDroppedCount() == 0;
+            for (int i = 0; matches && i < expected.length; i++) {
+                matches = batch.getEvents().get(i).getType() == expected[i];
+            }
+            if (!matches || batch.getEvents().get(0).getValue() != 2
+                    || batch.getEvents().get(0).getMergedCount() != 2) {
+                throw new Exception("Change feed events did not match the operations performed");
+            }
+            
+            // Pops are never coalesced, so these overflow the slow subscriber's buffer of 2
+            worker.pushValue(1);
+            worker.pushValue(2);
+            worker.pop();
+            worker.pop();
+            
+            StackEventBatch slowBatch = watcher.pollEvents(slowSubscriberId, 10, 0);
+            System.out.println("Slow subscriber saw: " + slowBatch.getEvents()
+                    + " | dropped: " + slowBatch.getDroppedCount());
+            if (slowBatch.getEvents().size() != 2 || slowBatch.getDroppedCount() != 4
+                    || slowBatch.getEvents().get(1).getValue() != 1) {
+                throw new Exception("Slow subscriber buffer was not bounded");
+            }
+        } finally {
+            watcher.unsubscribe(subscriberId);
+            watcher.unsubscribe(slowSubscriberId);
+        }
+        
+        // A stack accepts a bounded number of subscribers, on its own stack
+        // so the shared one keeps room for other clients
+        Calculator capped = watcher.stack("feed-cap");
+        List<Integer> accepted = new ArrayList<>();
+        try {
+            while (accepted.size() <= 1000) {
+                accepted.add(capped.subscribe(1));
+            }
+            throw new Exception("Subscriber count was not bounded");
+        } catch (RemoteException e) {
+            System.out.println("Subscriber " + (accepted.size() + 1) + " rejected: " + e.getMessage());
+        } finally {
+            for (int id : accepted) {
+                capped.unsubscribe(id);
+            }
+        }
+        if (accepted.size() != 100) {
+            throw new Exception("Expected 100 subscribers to be accepted, got " + accepted.size());
+        }
+        
+        System.out.println("Change feed test completed");
+    }
+    
+    /**
+     * Test multiple clients evaluating RPN programs concurrently
+     * 
+     * Programs run on private scratch stacks, so results never mix and the
+     * shared stack version must not change
+     */
+    private static void testEvaluate() throws Exception {
+        System.out.println("\n=== Test 5: RPN Program Evaluation ===");
+        
+        Calculator setupCalc = (Calculator) Naming.lookup(SERVICE_URL);
+        long versionBefore = setupCalc.getVersion();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_CLIENTS);
+        CountDownLatch latch = new CountDownLatch(NUM_CLIENTS);
+        AtomicInteger failures = new AtomicInteger();
+        
+        for (int i = 0; i < NUM_CLIENTS; i++) {
+            final int clientId = i + 1;
+            executor.submit(() -> {
+                try {
+                    Calculator calc = (Calculator) Naming.lookup(SERVICE_URL);
+                    
+                    // gcd(lcm(4k, 6k), max(8k, 3k)) = gcd(12k, 8k) = 4k
+                    String program = (4 * clientId) + " " + (6 * clientId) + " lcm:2 "
+                            + (8 * clientId) + " " + (3 * clientId) + " max:2 gcd";
+                    int fromText = calc.evaluate(program);
+                    int fromParsed = calc.evaluate(RpnProgram.parse(program));
+                    
+                    System.out.println("Client " + clientId + " evaluated \"" + program + "\" = " + fromText);
+                    if (fromText != 4 * clientId || fromParsed != 4 * clientId) {
+                        failures.incrementAndGet();
+                        System.err.println("Client " + clientId + " expected " + (4 * clientId));
+                    }
+                    
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    System.err.println("Client " + clientId + " error: " + e.getMessage());
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        
+        latch.await(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        
+        if (failures.get() > 0) {
+            throw new Exception("RPN evaluation test failed for " + failures.get() + " clients");
+        }
+        if (setupCalc.getVersion() != versionBefore) {
+            throw new Exception("RPN evaluation modified the shared stack");
+        }
+        System.out.println("RPN program evaluation completed");
+    }
+    
+    /**
+     * Test multiple clients each working on their own named stack
+     * 
+     * Named stacks are independent, so every client gets exactly its own
+     * result and the shared stack version must not change
+     */
+    private static void testNamedStacks() throws Exception {
+        System.out.println("\n=== Test 6: Named Stacks ===");
+        
+        Calculator setupCalc = (Calculator) Naming.lookup(SERVICE_URL);
+        long versionBefore = setupCalc.getVersion();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_CLIENTS);
+        CountDownLatch latch = new CountDownLatch(NUM_CLIENTS);
+        AtomicInteger failures = new AtomicInteger();
+        
+        for (int i = 0; i < NUM_CLIENTS; i++) {
+            final int clientId = i + 1;
+            executor.submit(() -> {
+                try {
+                    Calculator calc = ((Calculator) Naming.lookup(SERVICE_URL)).stack("client-" + clientId);
+                    
+                    // gcd(12k, 18k) = 6k, computed only from this client's values
+                    calc.pushValue(12 * clientId);
+                    calc.pushValue(18 * clientId);
+                    calc.pushOperation("gcd");
+                    int result = calc.pop();
+                    
+                    System.out.println("Client " + clientId + " got " + result + " from stack client-" + clientId);
+                    if (result != 6 * clientId || !calc.isEmpty()) {
+                        failures.incrementAndGet();
+                        System.err.println("Client " + clientId + " expected " + (6 * clientId));
+                    }
+                    
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    System.err.println("Client " + clientId + " error: " + e.getMessage());
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        
+        latch.await(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        
+        if (failures.get() > 0) {
+            throw new Exception("Named stack test failed for " + failures.get() + " clients");
+        }
+        if (setupCalc.getVersion() != versionBefore) {
+            throw new Exception("Named stacks modified the shared stack");
+        }
+        System.out.println("Named stack test completed");
+    }
+    
     /**
      * Test multiple clients popping values concurrently
      */
     private static void testConcurrentPopOperations() throws Exception {
-        System.out.println("\n=== Test 3: Concurrent Pop Operations ===");
+        System.out.println("\n=== Test 7: Concurrent Pop Operations ===");
         
         // Ensure we have values to pop
         Calculator setupCalc = (Calculator) Naming.lookup(SERVICE_URL);
@@ -229,4 +587,106 @@ public class TestMultipleClients {
         latch.await(5, TimeUnit.SECONDS);
         executor.shutdown();
     }
-}
\ No newline at end of file
+    
+    /**
+     * Test a large number of clients that are connected at the same time
+     * 
+     * Every client pushes a value and then blocks in delayPop, so all of them
+     * hold a server call open concurrently. Because delayPop waits without
+     * holding the stack lock, the whole run must stay within maxMillis, a few
+     * delays rather than one delay per client. If the server's health port is
+     * given, its thread count and heap are reported before and after the run.
+     * 
+     * @param numClients the number of concurrent clients to start
+     * @param maxMillis the longest the run may take, in milliseconds
+     * @param healthPort the server's health port, or -1 to skip the server figures
+     */
+    private static void testScaleClients(int numClients, long maxMillis, int healthPort) throws Exception {
+        System.out.println("\n=== Scale Test: " + numClients + " Concurrent Clients ===");
+        if (healthPort >= 0) {
+            System.out.println("Server before: " + serverStats(healthPort));
+        }
+        
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CountDownLatch ready = new CountDownLatch(numClients);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(numClients);
+        AtomicInteger failures = new AtomicInteger();
+        
+        for (int i = 0; i < numClients; i++) {
+            final int clientId = i + 1;
+            executor.submit(() -> {
+                Calculator calc = null;
+                try {
+                    calc = (Calculator) Naming.lookup(SERVICE_URL);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    System.err.println("Client " + clientId + " lookup error: " + e.getMessage());
+                } finally {
+                    ready.countDown();
+                }
+                
+                try {
+                    start.await();
+                    if (calc != null) {
+                        // Our own push guarantees the stack is not empty when we pop
+                        calc.pushValue(clientId);
+                        calc.delayPop(SCALE_DELAY_MILLIS);
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    System.err.println("Client " + clientId + " error: " + e.getMessage());
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        
+        ready.await(60, TimeUnit.SECONDS);
+        long startTime = System.currentTimeMillis();
+        start.countDown();
+        
+        boolean finished = done.await(120, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - startTime;
+        executor.shutdownNow();
+        
+        System.out.println("Scale test finished: " + finished + " | clients: " + numClients
+                + " | failures: " + failures.get() + " | elapsed: " + elapsed + "ms");
+        if (healthPort >= 0) {
+            System.out.println("Server after: " + serverStats(healthPort));
+        }
+        
+        if (!finished || failures.get() > 0) {
+            throw new Exception("Scale test did not complete cleanly");
+        }
+        if (elapsed > maxMillis) {
+            throw new Exception("Scale test took " + elapsed + "ms, more than the " + maxMillis + "ms allowed");
+        }
+    }
+    
+    /**
+     * Read the server's thread and heap figures from its /stats probe
+     * 
+     * @param healthPort the server's health port
+     * @return the figures on one line, or why they could not be read
+     */
+    private static String serverStats(int healthPort) {
+        try {
+            URL url = new URL("http://localhost:" + healthPort + "/stats");
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                StringBuilder stats = new StringBuilder();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("heapUsed=")) {
+                        line = "heapUsed=" + (Long.parseLong(line.substring(9)) >> 20) + "MB";
+                    }
+                    stats.append(stats.length() == 0 ? "" : " | ").append(line);
+                }
+                return stats.toString();
+            }
+        } catch (IOException | NumberFormatException e) {
+            return "unavailable (" + e.getMessage() + ")";
+        }
+    }
+}
@@ -0,0 +1,577 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * TestSpillableIntStack checks the segmented stack storage used by the server
+ *
+ * The functional tests use tiny segments (4 values, 1 segment on the heap) so
+ * every few pushes cross a spill boundary; one of them injects spill file
+ * failures through openSpillChannel. The deep mode pushes tens of
+ * millions of values with the server's default segment size and reports how
+ * much heap the stack needed; the named mode creates thousands of empty
+ * named stacks and reports how much heap each one needed.
+ */
+public class TestSpillableIntStack {
+
+    private static final int SEGMENT_SIZE = 4;
+    private static final int HEAP_SEGMENTS = 1;
+
+    // Defaults for the deep mode
+    private static final long DEEP_VALUES = 30000000L;
+    private static final long DEEP_HEAP_VALUES = 1000000L;
+
+    // Default for the named mode
+    private static final int NAMED_STACKS = 20000;
+
+    /**
+     * Main method to run the stack tests
+     *
+     * @param args command line arguments:
+     *            args[0] - "deep" to run only the deep stack test, or "named"
+     *                      to run only the named stacks test (optional)
+     *            args[1] - number of values to push in deep mode, or number of
+     *                      stacks to create in named mode (optional)
+     *            args[2] - number of values kept on the heap in deep mode (optional)
+     */
+    public static void main(String[] args) {
+        try {
+            if (args.length > 0 && "deep".equalsIgnoreCase(args[0])) {
+                long values = args.length > 1 ? Long.parseLong(args[1]) : DEEP_VALUES;
+                long heapValues = args.length > 2 ? Long.parseLong(args[2]) : DEEP_HEAP_VALUES;
+                testDeepStack(values, heapValues);
+                return;
+            }
+            if (args.length > 0 && "named".equalsIgnoreCase(args[0])) {
+                testManyNamedStacks(args.length > 1 ? Integer.parseInt(args[1]) : NAMED_STACKS);
+                return;
+            }
+
+            testPushPopAcrossSpill();
+            testStreamingFromSpill();
+            testOperationOverSpill();
+            testClearTruncatesSpill();
+            testFailedSpillKeepsValues();
+            testTopSegmentGrows();
+
+            System.out.println("\nAll spillable stack tests completed successfully!");
+        } catch (Exception e) {
+            System.err.println("Spillable stack test failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Test random pushes and pops against an ArrayDeque, crossing the spill
+     * boundary in both directions many times
+     */
+    private static void testPushPopAcrossSpill() throws Exception {
+        System.out.println("\n=== Test 1: Push/Pop Across Spill Boundary ===");
+
+        SpillableIntStack stack = new SpillableIntStack(SEGMENT_SIZE, HEAP_SEGMENTS);
+        ArrayDeque<Integer> expected = new ArrayDeque<>();
+        Random random = new Random(42);
+        long maxSpilled = 0;
+
+        try {
+            for (int i = 0; i < 20000; i++) {
+                // Lean towards pushes in the first half and pops in the second
+                boolean push = expected.isEmpty() || random.nextInt(100) < (i < 10000 ? 60 : 40);
+                if (push) {
+                    int val = random.nextInt();
+                    stack.push(val);
+                    expected.push(val);
+                } else {
+                    int val = stack.pop();
+                    if (val != expected.pop()) {
+                        throw new Exception("Popped wrong value at step " + i);
+                    }
+                }
+                if (stack.size() != expected.size() || stack.isEmpty() != expected.isEmpty()) {
+                    throw new Exception("Size mismatch at step " + i);
+                }
+                maxSpilled = Math.max(maxSpilled, stack.spilledSize());
+            }
+            while (!expected.isEmpty()) {
+                if (stack.pop() != expected.pop()) {
+                    throw new Exception("Popped wrong value while emptying the stack");
+                }
+            }
+            if (!stack.isEmpty() || stack.spilledSize() != 0) {
+                throw new Exception("Stack not empty after popping every value");
+            }
+        } finally {
+            stack.close();
+        }
+
+        if (maxSpilled == 0) {
+            throw new Exception("Stack never spilled");
+        }
+        System.out.println("Up to " + maxSpilled + " values were spilled; every pop matched");
+        System.out.println("Push/pop across spill boundary completed");
+    }
+
+    /**
+     * Test that topDown, bottomUp and toArray read spilled values in order
+     */
+    private static void testStreamingFromSpill() throws Exception {
+        System.out.println("\n=== Test 2: Streaming Over Spilled Segments ===");
+
+        SpillableIntStack stack = new SpillableIntStack(SEGMENT_SIZE, HEAP_SEGMENTS);
+        int count = 4 * SEGMENT_SIZE + 3;
+        try {
+            for (int i = 0; i < count; i++) {
+                stack.push(i);
+            }
+            if (stack.spilledSize() == 0) {
+                throw new Exception("Stack did not spill");
+            }
+
+            int[] topDown = stack.topDown().toArray();
+            int[] array = stack.toArray();
+            for (int i = 0; i < count; i++) {
+                if (topDown[i] != count - 1 - i || array[i] != i) {
+                    throw new Exception("Stack streamed out of order at " + i);
+                }
+            }
+
+            // Every start position, including inside spilled, heap and top segments
+            for (int from = 0; from <= count + 1; from++) {
+                int[] bottomUp = stack.bottomUp(from).toArray();
+                if (bottomUp.length != Math.max(0, count - from)) {
+                    throw new Exception("bottomUp(" + from + ") returned " + bottomUp.length + " values");
+                }
+                for (int i = 0; i < bottomUp.length; i++) {
+                    if (bottomUp[i] != from + i) {
+                        throw new Exception("bottomUp(" + from + ") out of order at " + i);
+                    }
+                }
+            }
+        } finally {
+            stack.close();
+        }
+        System.out.println("Streaming over spilled segments completed");
+    }
+
+    /**
+     * Test that pushOperation reduces values that were spilled to disk
+     */
+    private static void testOperationOverSpill() throws Exception {
+        System.out.println("\n=== Test 3: Operations Over Spilled Segments ===");
+
+        CalculatorImplementation calc = new CalculatorImplementation(
+                () -> new SpillableIntStack(SEGMENT_SIZE, HEAP_SEGMENTS));
+        try {
+            // lcm(1..12) = 27720; the low values end up in the spill file
+            for (int i = 1; i <= 12; i++) {
+                calc.pushValue(i);
+            }
+            calc.pushOperation("lcm");
+            int lcm = calc.pop();
+
+            for (int i = 1; i <= 12; i++) {
+                calc.pushValue(i == 1 ? -5 : i * 10);
+            }
+            calc.pushOperation("min");
+            int min = calc.pop();
+
+            System.out.println("lcm(1..12) = " + lcm + " | min = " + min);
+            if (lcm != 27720 || min != -5 || !calc.isEmpty()) {
+                throw new Exception("Operation did not include the spilled values");
+            }
+        } finally {
+            UnicastRemoteObject.unexportObject(calc, true);
+        }
+        System.out.println("Operations over spilled segments completed");
+    }
+
+    /**
+     * Test that clear() truncates the spill file and the stack stays usable
+     */
+    private static void testClearTruncatesSpill() throws Exception {
+        System.out.println("\n=== Test 4: Clear Truncates Spill File ===");
+
+        SpillableIntStack stack = new SpillableIntStack(SEGMENT_SIZE, HEAP_SEGMENTS);
+        Path spillFile;
+        try {
+            for (int i = 0; i < 100; i++) {
+                stack.push(i);
+            }
+            spillFile = stack.spillPath();
+            if (spillFile == null || Files.size(spillFile) == 0) {
+                throw new Exception("Stack did not write a spill file");
+            }
+            System.out.println("Spill file holds " + Files.size(spillFile) + " bytes before clear");
+
+            stack.clear();
+            if (Files.size(spillFile) != 0 || !stack.isEmpty() || stack.spilledSize() != 0) {
+                throw new Exception("clear() did not truncate the spill file");
+            }
+
+            // The stack must spill and refill correctly after being cleared
+            for (int i = 0; i < 50; i++) {
+                stack.push(i);
+            }
+            for (int i = 49; i >= 0; i--) {
+                if (stack.pop() != i) {
+                    throw new Exception("Wrong value after clear");
+                }
+            }
+        } finally {
+            stack.close();
+        }
+        if (Files.exists(spillFile)) {
+            throw new Exception("close() did not delete the spill file");
+        }
+        System.out.println("Clear truncates spill file completed");
+    }
+
+    /**
+     * Test that a failed spill or refill leaves every value in place, and that
+     * the same push or pop succeeds once the file works again
+     */
+    private static void testFailedSpillKeepsValues() throws Exception {
+        System.out.println("\n=== Test 5: Failed Spill Keeps Values ===");
+
+        FailingChannel[] channel = new FailingChannel[1];
+        SpillableIntStack stack = new SpillableIntStack(SEGMENT_SIZE, HEAP_SEGMENTS) {
+            @Override
+            FileChannel openSpillChannel(Path path) throws IOException {
+                channel[0] = new FailingChannel(super.openSpillChannel(path));
+                return channel[0];
+            }
+        };
+        ArrayDeque<Integer> expected = new ArrayDeque<>();
+        try {
+            for (int i = 0; i < 5 * SEGMENT_SIZE; i++) {
+                stack.push(i);
+                expected.push(i);
+            }
+
+            // Push until a spill is needed and fails; the failed push changes nothing
+            channel[0].failing = true;
+            long spilled = stack.spilledSize();
+            int next = expected.size();
+            boolean failed = false;
+            for (int i = 0; i < 2 * SEGMENT_SIZE && !failed; i++) {
+                try {
+                    stack.push(next);
+                    expected.push(next);
+                    next++;
+                } catch (UncheckedIOException e) {
+                    failed = true;
+                    System.out.println("Push failed as injected: " + e.getMessage());
+                }
+            }
+            if (!failed || stack.size() != expected.size() || stack.spilledSize() != spilled) {
+                throw new Exception("Failed spill changed the stack: size " + stack.size()
+                        + ", expected " + expected.size());
+            }
+            channel[0].failing = false;
+            stack.push(next);
+            expected.push(next);
+
+            // Pop until a refill from the file is needed and fails; the failed pop changes nothing
+            channel[0].failing = true;
+            failed = false;
+            while (!failed) {
+                try {
+                    int val = stack.pop();
+                    if (val != expected.pop()) {
+                        throw new Exception("Popped wrong value before the failure");
+                    }
+                } catch (UncheckedIOException e) {
+                    failed = true;
+                    System.out.println("Pop failed as injected: " + e.getMessage());
+                }
+            }
+            if (stack.size() != expected.size() || stack.spilledSize() != expected.size()) {
+                throw new Exception("Failed refill changed the stack: size " + stack.size()
+                        + ", expected " + expected.size());
+            }
+            channel[0].failing = false;
+            while (!expected.isEmpty()) {
+                if (stack.pop() != expected.pop()) {
+                    throw new Exception("Popped wrong value after the failures");
+                }
+            }
+            if (!stack.isEmpty()) {
+                throw new Exception("Stack not empty after popping every value");
+            }
+        } finally {
+            channel[0].failing = false;
+            stack.close();
+        }
+        System.out.println("Failed spill keeps values completed");
+    }
+
+    /**
+     * Test that the top segment starts small, grows to a full segment and
+     * starts small again after clear(), with spills and refills in between
+     */
+    private static void testTopSegmentGrows() throws Exception {
+        System.out.println("\n=== Test 6: Top Segment Grows ===");
+
+        int segmentSize = 64;
+        SpillableIntStack stack = new SpillableIntStack(segmentSize, HEAP_SEGMENTS);
+        try {
+            for (int round = 0; round < 2; round++) {
+                int count = 3 * segmentSize + 5;
+                for (int i = 0; i < count; i++) {
+                    stack.push(i);
+                    if (stack.size() != i + 1) {
+                        throw new Exception("Size mismatch after push " + i);
+                    }
+                }
+                int[] array = stack.toArray();
+                for (int i = 0; i < count; i++) {
+                    if (array[i] != i) {
+                        throw new Exception("Stack streamed out of order at " + i);
+                    }
+                }
+                for (int i = count - 1; i >= count / 2; i--) {
+                    if (stack.pop() != i) {
+                        throw new Exception("Wrong value popped at " + i);
+                    }
+                }
+                stack.clear();
+            }
+        } finally {
+            stack.close();
+        }
+        System.out.println("Top segment grows completed");
+    }
+
+    /**
+     * Create many empty named stacks and check the server runs out of names
+     * before it runs out of heap
+     *
+     * Run with a small -Xmx: each stack must cost about a kilobyte, not a
+     * whole segment, and the cap must reject stacks before the heap is full.
+     *
+     * @param count the number of named stacks to create
+     */
+    private static void testManyNamedStacks(int count) throws Exception {
+        Runtime runtime = Runtime.getRuntime();
+        System.out.println("\n=== Named Stacks: " + count + " empty stacks, "
+                + (runtime.maxMemory() >> 20) + " MB heap ===");
+
+        CalculatorImplementation calc = new CalculatorImplementation();
+        List<Calculator> stacks = new ArrayList<>();
+        try {
+            long baseline = usedHeap(runtime);
+            String rejected = null;
+            try {
+                for (int i = 0; i < count && rejected == null; i++) {
+                    try {
+                        stacks.add(calc.stack("s" + i));
+                    } catch (RemoteException e) {
+                        rejected = e.getMessage();
+                    }
+                }
+            } catch (OutOfMemoryError e) {
+                int created = stacks.size();
+                stacks.clear();
+                throw new Exception("Ran out of heap after " + created + " named stacks");
+            }
+            long used = usedHeap(runtime) - baseline;
+            System.out.println("Created " + stacks.size() + " named stacks using "
+                    + (used / Math.max(1, stacks.size())) + " bytes each"
+                    + (rejected == null ? "" : " | then rejected: " + rejected));
+
+            // Every stack is still usable, and there is heap left to use them
+            for (Calculator stack : stacks) {
+                stack.pushValue(1);
+                if (stack.pop() != 1) {
+                    throw new Exception("Named stack returned the wrong value");
+                }
+            }
+            if (stacks.size() < Math.min(count, 1000)) {
+                throw new Exception("Only " + stacks.size() + " named stacks were allowed");
+            }
+        } finally {
+            for (Calculator stack : stacks) {
+                UnicastRemoteObject.unexportObject(stack, true);
+            }
+            UnicastRemoteObject.unexportObject(calc, true);
+        }
+        System.out.println("Named stacks test completed");
+    }
+
+    /**
+     * Push a very deep stack with a heap limit, report the heap it needs and
+     * check every value on the way back down
+     *
+     * @param values the number of values to push
+     * @param heapValues the number of values to keep on the heap
+     */
+    private static void testDeepStack(long values, long heapValues) throws Exception {
+        System.out.println("\n=== Deep Stack: " + values + " values, " + heapValues + " on the heap ===");
+
+        Runtime runtime = Runtime.getRuntime();
+        long baseline = usedHeap(runtime);
+        SpillableIntStack stack = SpillableIntStack.withHeapLimit(heapValues);
+        try {
+            long start = System.nanoTime();
+            for (long i = 0; i < values; i++) {
+                stack.push((int) i);
+            }
+            long pushMillis = (System.nanoTime() - start) / 1000000;
+
+            long used = usedHeap(runtime) - baseline;
+            long asArray = values * 4;
+            System.out.println("Pushed in " + pushMillis + "ms | spilled: " + stack.spilledSize()
+                    + " | heap used by stack: " + (used >> 20) + " MB"
+                    + " (an int[] copy would need " + (asArray >> 20) + " MB)");
+
+            start = System.nanoTime();
+            for (long i = values - 1; i >= 0; i--) {
+                if (stack.pop() != (int) i) {
+                    throw new Exception("Wrong value popped at depth " + i);
+                }
+            }
+            long popMillis = (System.nanoTime() - start) / 1000000;
+            System.out.println("Popped and checked in " + popMillis + "ms");
+
+            if (values > heapValues * 4 && used > asArray / 2) {
+                throw new Exception("Heap usage did not stay flat: " + (used >> 20) + " MB");
+            }
+        } finally {
+            stack.close();
+        }
+        System.out.println("Deep stack test completed");
+    }
+
+    /**
+     * @param runtime the runtime to measure
+     * @return the heap in use after a garbage collection, in bytes
+     */
+    private static long usedHeap(Runtime runtime) {
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * FailingChannel passes every call to a real file channel, except that
+     * positional reads, writes and truncation throw while failing is set
+     */
+    private static class FailingChannel extends FileChannel {
+
+        private final FileChannel channel;
+        volatile boolean failing;
+
+        FailingChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void check() throws IOException {
+            if (failing) {
+                throw new IOException("Injected spill file failure");
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            check();
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            check();
+            return channel.write(src, position);
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            check();
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
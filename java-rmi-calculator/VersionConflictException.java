@@ -0,0 +1,41 @@
+/**
+ * VersionConflictException signals that the stack changed between a client
+ * reading its version and trying to commit an atomic operation
+ * 
+ * Clients should re-read the version and retry. This is deliberately not a
+ * RemoteException, because RMI would wrap those in a ServerException and
+ * clients could no longer catch the conflict by type.
+ */
+public class VersionConflictException extends Exception {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final long expectedVersion;
+    private final long actualVersion;
+    
+    /**
+     * Constructor records both versions involved in the conflict
+     * 
+     * @param expectedVersion the version the client expected
+     * @param actualVersion the version the stack is actually at
+     */
+    public VersionConflictException(long expectedVersion, long actualVersion) {
+        super("Stack version conflict: expected " + expectedVersion + " but was " + actualVersion);
+        this.expectedVersion = expectedVersion;
+        this.actualVersion = actualVersion;
+    }
+    
+    /**
+     * @return the version the client expected
+     */
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+    
+    /**
+     * @return the version the stack is actually at
+     */
+    public long getActualVersion() {
+        return actualVersion;
+    }
+}
@@ -0,0 +1,79 @@
+#!/bin/bash
+# Cluster throughput benchmark for the Java RMI Calculator
+# Starts 1..N calculator servers behind a CalculatorRouter on this machine
+
+MAX_NODES=${1:-4}
+CLIENTS=${2:-32}
+SECONDS_PER_RUN=${3:-10}
+
+ROUTER_PORT=1099
+FIRST_NODE_PORT=1100
+ROUTER_URL="rmi://localhost:$ROUTER_PORT/CalculatorService"
+ADMIN_URL="rmi://localhost:$ROUTER_PORT/CalculatorServiceAdmin"
+
+# Color codes for output
+GREEN='\033[0;32m'
+YELLOW='\033[1;33m'
+BLUE='\033[0;34m'
+NC='\033[0m' # No Color
+
+print_info() {
+    echo -e "${YELLOW}ℹ $1${NC}"
+}
+
+print_header() {
+    echo -e "${BLUE}=== $1 ===${NC}"
+}
+
+PIDS=()
+
+# Function to stop every process started by this script
+cleanup() {
+    for pid in "${PIDS[@]}"; do
+        kill $pid 2>/dev/null
+    done
+    wait 2>/dev/null
+    PIDS=()
+}
+
+trap cleanup EXIT
+
+# Start a calculator server on the given port
+start_node() {
+    java CalculatorServer --daemon --port $1 > /dev/null 2>&1 &
+    PIDS+=($!)
+}
+
+print_info "Compiling Java files... "
+javac -encoding UTF-8 *.java || exit 1
+
+for n in $(seq 1 $MAX_NODES); do
+    print_header "Cluster with $n node(s)"
+
+    NODE_ARGS=""
+    for i in $(seq 0 $((n - 1))); do
+        port=$((FIRST_NODE_PORT + i))
+        start_node $port
+        NODE_ARGS="$NODE_ARGS --node rmi://localhost:$port/CalculatorService"
+    done
+    sleep 2
+
+    java CalculatorRouter --port $ROUTER_PORT $NODE_ARGS > /dev/null 2>&1 &
+    PIDS+=($!)
+    sleep 2
+
+    java ClusterBenchmark throughput $ROUTER_URL $CLIENTS $SECONDS_PER_RUN
+
+    # On the largest cluster also check that stacks survive a node joining and leaving
+    if [ $n -eq $MAX_NODES ]; then
+        extra_port=$((FIRST_NODE_PORT + n))
+        start_node $extra_port
+        sleep 2
+        java ClusterBenchmark migration $ROUTER_URL $ADMIN_URL "rmi://localhost:$extra_port/CalculatorService"
+    fi
+
+    cleanup
+    sleep 1
+done
+
+echo -e "${GREEN}✓ Cluster benchmark completed${NC}"
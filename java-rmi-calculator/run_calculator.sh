@@ -26,7 +26,7 @@ print_header() {
 # Compile Java files
 print_header "Step 1: Compilation "
 print_info "Compiling Java files... "
-javac *.java
+javac -encoding UTF-8 *.java
 if [ $? -eq 0 ]; then
     print_success "Compilation successful "
 else
@@ -47,7 +47,7 @@ print_success "RMI registry started (PID: $REGISTRY_PID) "
 # Start Server
 print_header "Step 3: Starting Calculator Server "
 print_info "Starting calculator server... "
-java CalculatorServer &
+java CalculatorServer --daemon &
 SERVER_PID=$!
 sleep 3
 print_success "Calculator server started (PID: $SERVER_PID) "
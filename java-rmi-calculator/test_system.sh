@@ -37,7 +37,7 @@ print_status "Java is available " 0
 
 # Compile all Java files
 print_info "Compiling Java files... "
-javac *.java
+javac -encoding UTF-8 *.java
 print_status "Compilation completed " $?
 
 # Start RMI registry in background
@@ -49,7 +49,7 @@ print_status "RMI registry started (PID: $REGISTRY_PID)" 0
 
 # Start server in background
 print_info "Starting calculator server... "
-java CalculatorServer &
+java CalculatorServer --daemon &
 SERVER_PID=$!
 sleep 3
 print_status "Calculator server started (PID: $SERVER_PID) " 0